@@ -0,0 +1,106 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import lab1.bench.Workload;
+
+/**
+ * {@link Workload} over the application classes; see {@link Workload} for why it lives in the
+ * default package.
+ */
+public final class Lab1Workload implements Workload {
+
+  private CompactGraph graph;
+  private BridgeWords bridgeWords;
+  private RandomWalker uniformWalker;
+  private RandomWalker weightedWalker;
+
+  @Override
+  public Object buildGraph(String builder, Path corpus) {
+    switch (builder) {
+      case "original":
+        return Main.Graph.buildGraph(corpus.toString());
+      case "streaming":
+        return Main.Graph.buildGraphStreaming(corpus.toString());
+      case "parallel":
+        return Main.Graph.buildGraphParallel(corpus.toString());
+      case "offheap":
+        return Main.Graph.buildGraphOffHeap(corpus.toString());
+      default:
+        throw new IllegalArgumentException("Unknown builder: " + builder);
+    }
+  }
+
+  @Override
+  public int tokenize(String tokenizer, Path corpus) throws IOException {
+    int[] count = new int[1];
+    try (BufferedReader reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+      if (!tokenizer.equals("regex")) {
+        WordTokenizer.tokenize(reader,
+                WordTokenizer.Mode.valueOf(tokenizer.toUpperCase(Locale.ROOT)),
+                word -> count[0]++);
+        return count[0];
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] words = line.replaceAll("[^a-zA-Z\\s]", " ").toLowerCase().split("\\s+");
+        for (String word : words) {
+          if (!word.isEmpty()) {
+            count[0]++;
+          }
+        }
+      }
+    }
+    return count[0];
+  }
+
+  @Override
+  public void load(Path corpus, boolean offHeap) throws IOException {
+    graph = offHeap ? Main.Graph.buildGraphOffHeap(corpus.toString())
+            : CompactGraph.from(ParallelGraphBuilder.build(corpus));
+    bridgeWords = BridgeWords.indexed(graph);
+    uniformWalker = new RandomWalker(graph, false);
+    weightedWalker = new RandomWalker(graph, true);
+  }
+
+  @Override
+  public int nodeCount() {
+    return graph.nodeCount();
+  }
+
+  @Override
+  public String word(int id) {
+    return graph.word(id);
+  }
+
+  @Override
+  public String queryBridgeWords(String word1, String word2) {
+    return Main.Graph.queryBridgeWords(word1, word2, bridgeWords);
+  }
+
+  @Override
+  public String generateNewText(String text) {
+    return Main.Graph.generateNewText(text, bridgeWords);
+  }
+
+  @Override
+  public String calcShortestPath(String word1, String word2) {
+    return Main.Graph.calcShortestPath(word1, word2, graph);
+  }
+
+  @Override
+  public String calcShortestPathSingleWord(String word) {
+    return Main.Graph.calcShortestPathSingleWord(word, graph);
+  }
+
+  @Override
+  public int randomWalk(long seed, int maxLength, boolean weighted) {
+    RandomWalker walker = weighted ? weightedWalker : uniformWalker;
+    return walker.walk(new SplittableRandom(seed), maxLength,
+            RandomWalker.Termination.REPEATED_EDGE).length - 1;
+  }
+}
@@ -0,0 +1,31 @@
+package lab1.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the standard JMH command line, with the allocation
+ * profiler ({@code -prof gc}) enabled unless other profilers are given.
+ */
+public final class BenchmarkMain {
+
+  private BenchmarkMain() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams()
+            || cli.shouldListProfilers() || cli.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+    if (cli.getProfilers().isEmpty()) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,32 @@
+package lab1.bench;
+
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A Zipf corpus of the chosen size, shared by all benchmark threads. The sizes can be narrowed
+ * on the command line, e.g. {@code -p words=10000,1000000}.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+  @Param({"10000", "1000000", "10000000", "100000000"})
+  public long words;
+
+  @Param({"100000"})
+  public int vocabulary;
+
+  Path corpus;
+  Workload workload;
+
+  @Setup(Level.Trial)
+  public void createCorpus() {
+    corpus = ZipfCorpus.get(words, vocabulary);
+    workload = Workload.create();
+  }
+}
@@ -0,0 +1,48 @@
+package lab1.bench;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * A corpus with its graph and bridge-word index loaded, plus word pairs to query. The graph is
+ * kept on the heap or in direct memory according to {@code storage}.
+ */
+public class GraphState extends CorpusState {
+
+  private static final int QUERIES = 1024;
+
+  @Param({"heap", "offheap"})
+  public String storage;
+
+  /** Sampled uniformly from the graph, so that queries are not all for the frequent words. */
+  String[] firstWords;
+  String[] secondWords;
+  /** Sentences of eight words drawn from the graph. */
+  String[] texts;
+
+  @Setup(Level.Trial)
+  public void loadGraph() throws IOException {
+    workload.load(corpus, "offheap".equals(storage));
+    SplittableRandom rng = new SplittableRandom(ZipfCorpus.SEED);
+    firstWords = new String[QUERIES];
+    secondWords = new String[QUERIES];
+    texts = new String[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      firstWords[i] = randomWord(rng);
+      secondWords[i] = randomWord(rng);
+      StringBuilder text = new StringBuilder(randomWord(rng));
+      for (int j = 1; j < 8; j++) {
+        text.append(' ').append(randomWord(rng));
+      }
+      texts[i] = text.toString();
+    }
+  }
+
+  private String randomWord(SplittableRandom rng) {
+    return workload.word(rng.nextInt(workload.nodeCount()));
+  }
+}
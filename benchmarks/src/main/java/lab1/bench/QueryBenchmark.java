@@ -0,0 +1,49 @@
+package lab1.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of bridge-word queries and of text generation with bridge words.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+  /**
+   * Each thread cycles through the sampled queries on its own.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+
+    int next(int length) {
+      int i = next;
+      next = i + 1 == length ? 0 : i + 1;
+      return i;
+    }
+  }
+
+  @Benchmark
+  public String queryBridgeWords(GraphState graph, Cursor cursor) {
+    int i = cursor.next(graph.firstWords.length);
+    return graph.workload.queryBridgeWords(graph.firstWords[i], graph.secondWords[i]);
+  }
+
+  @Benchmark
+  public String generateNewText(GraphState graph, Cursor cursor) {
+    return graph.workload.generateNewText(graph.texts[cursor.next(graph.texts.length)]);
+  }
+}
@@ -0,0 +1,57 @@
+package lab1.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random-walk throughput. The {@code steps} counter reports edges followed per second, which
+ * stays comparable across graphs where walks have very different lengths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomWalkBenchmark {
+
+  private static final int MAX_LENGTH = 10_000;
+
+  @State(Scope.Thread)
+  public static class Walks {
+    @Param({"false", "true"})
+    public boolean weighted;
+
+    long seed;
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Steps {
+    public long steps;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      steps = 0;
+    }
+  }
+
+  @Benchmark
+  public int randomWalk(GraphState graph, Walks walks, Steps steps) {
+    int length = graph.workload.randomWalk(walks.seed++, MAX_LENGTH, walks.weighted);
+    steps.steps += length;
+    return length;
+  }
+}
@@ -0,0 +1,34 @@
+package lab1.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of shortest-path queries between two words and from one word to all others.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShortestPathBenchmark {
+
+  @Benchmark
+  public String calcShortestPath(GraphState graph, QueryBenchmark.Cursor cursor) {
+    int i = cursor.next(graph.firstWords.length);
+    return graph.workload.calcShortestPath(graph.firstWords[i], graph.secondWords[i]);
+  }
+
+  @Benchmark
+  public String calcShortestPathSingleWord(GraphState graph, QueryBenchmark.Cursor cursor) {
+    return graph.workload.calcShortestPathSingleWord(
+            graph.firstWords[cursor.next(graph.firstWords.length)]);
+  }
+}
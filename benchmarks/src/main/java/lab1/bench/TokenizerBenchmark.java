@@ -0,0 +1,71 @@
+package lab1.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Text normalization throughput: the regular expressions of the original build against the ASCII
+ * and Unicode modes of the table-driven tokenizer, without building a graph. The {@code megabytes}
+ * counter reports the input read per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Input extends CorpusState {
+    @Param({"regex", "ascii", "unicode"})
+    public String tokenizer;
+
+    double megabytes;
+
+    @Override
+    public void createCorpus() {
+      super.createCorpus();
+      try {
+        megabytes = Files.size(corpus) / 1e6;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Counted per iteration and divided by its duration by JMH.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Bytes {
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      megabytes = 0;
+    }
+  }
+
+  @Benchmark
+  public int tokenize(Input input, Bytes bytes) throws IOException {
+    bytes.megabytes += input.megabytes;
+    return input.workload.tokenize(input.tokenizer, input.corpus);
+  }
+}
@@ -0,0 +1,62 @@
+package lab1.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The operations under benchmark. The application classes live in the default package, which
+ * a named package cannot import, so they are reached through this interface, implemented by the
+ * default-package class {@code Lab1Workload} and instantiated once by reflection. Calls made
+ * during measurement are ordinary interface calls.
+ */
+public interface Workload {
+
+  /**
+   * Creates the workload implementation; call {@link #load} before running queries.
+   */
+  static Workload create() {
+    try {
+      return (Workload) Class.forName("Lab1Workload").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Lab1Workload is missing from the class path", e);
+    }
+  }
+
+  /**
+   * Builds the graph of {@code corpus} with the given builder ({@code "original"},
+   * {@code "streaming"}, {@code "parallel"} or {@code "offheap"}) and returns it, so the result
+   * is not dead code.
+   */
+  Object buildGraph(String builder, Path corpus);
+
+  /**
+   * Splits {@code corpus} into words with the given tokenizer and returns how many there are:
+   * {@code "regex"} is the per-line replacement, lower-casing and split of the original build,
+   * {@code "ascii"} and {@code "unicode"} are the modes of the table-driven tokenizer.
+   */
+  int tokenize(String tokenizer, Path corpus) throws IOException;
+
+  /**
+   * Builds the graph of {@code corpus} and the indexes the query methods use, keeping the graph
+   * in direct memory if {@code offHeap} is set.
+   */
+  void load(Path corpus, boolean offHeap) throws IOException;
+
+  int nodeCount();
+
+  String word(int id);
+
+  String queryBridgeWords(String word1, String word2);
+
+  String generateNewText(String text);
+
+  String calcShortestPath(String word1, String word2);
+
+  String calcShortestPathSingleWord(String word);
+
+  /**
+   * Walks from a random node chosen by {@code seed} until an edge repeats, a dead end or
+   * {@code maxLength} nodes, and returns the number of steps taken.
+   */
+  int randomWalk(long seed, int maxLength, boolean weighted);
+}
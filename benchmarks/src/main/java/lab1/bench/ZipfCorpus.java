@@ -0,0 +1,89 @@
+package lab1.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic text whose word frequencies follow Zipf's law, like natural language.
+ *
+ * <p>Word {@code k} of the vocabulary (0-based rank) is drawn with probability proportional to
+ * {@code 1 / (k + 1)^exponent} and spelled as a distinct lowercase word. Corpora are written once
+ * to {@code lab1.corpusDir} (the system temporary directory by default) and reused by later runs
+ * with the same parameters, because the largest ones take a while to generate.
+ */
+final class ZipfCorpus {
+
+  static final double EXPONENT = 1.0;
+  static final long SEED = 42;
+
+  private static final int WORDS_PER_LINE = 16;
+
+  private ZipfCorpus() {
+  }
+
+  /**
+   * Returns the corpus of {@code words} words over {@code vocabulary} distinct words, generating
+   * it first if needed.
+   */
+  static synchronized Path get(long words, int vocabulary) {
+    Path dir = Paths.get(System.getProperty("lab1.corpusDir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "lab1-corpora").toString()));
+    Path file = dir.resolve("zipf-" + words + "-" + vocabulary + "-" + EXPONENT + "-" + SEED
+            + ".txt");
+    if (Files.exists(file)) {
+      return file;
+    }
+    try {
+      Files.createDirectories(dir);
+      Path tmp = Files.createTempFile(dir, "zipf-", ".tmp");
+      try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.US_ASCII)) {
+        write(words, vocabulary, out);
+      }
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+      return file;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static void write(long words, int vocabulary, Appendable out) throws IOException {
+    double[] cumulative = new double[vocabulary];
+    double sum = 0;
+    for (int rank = 0; rank < vocabulary; rank++) {
+      sum += 1 / Math.pow(rank + 1, EXPONENT);
+      cumulative[rank] = sum;
+    }
+    String[] spelling = new String[vocabulary];
+    SplittableRandom rng = new SplittableRandom(SEED);
+    for (long i = 0; i < words; i++) {
+      int rank = Arrays.binarySearch(cumulative, rng.nextDouble(sum));
+      if (rank < 0) {
+        rank = -rank - 1;
+      }
+      if (spelling[rank] == null) {
+        spelling[rank] = spell(rank);
+      }
+      out.append(spelling[rank]);
+      out.append((i + 1) % WORDS_PER_LINE == 0 ? '\n' : ' ');
+    }
+  }
+
+  /**
+   * Spells {@code rank} in bijective base 26: 0 is "a", 25 is "z", 26 is "aa" and so on.
+   */
+  static String spell(int rank) {
+    StringBuilder word = new StringBuilder();
+    for (int n = rank + 1; n > 0; n = (n - 1) / 26) {
+      word.append((char) ('a' + (n - 1) % 26));
+    }
+    return word.reverse().toString();
+  }
+}
@@ -0,0 +1,219 @@
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous facade over the graph operations of {@link Main.Graph}, returning futures of
+ * structured results instead of formatted text.
+ *
+ * <p>Every operation runs as one task on the executor given to the constructor, so the caller's
+ * thread never blocks and the executor decides how much runs at once; a rejected task fails its
+ * future with {@link RejectedExecutionException}, which lets a {@link #boundedExecutor} shed load.
+ * With {@link #withTimeout} every future fails with a {@link java.util.concurrent.TimeoutException}
+ * once the deadline passes, counted from submission so that queueing time is included.
+ *
+ * <p>A future that is cancelled or times out stops its task cooperatively through a
+ * {@link Cancellation}: a task still queued is skipped, single-source shortest paths and DOT
+ * writing stop at their next check, batches of walks stop between walks, and a running Graphviz
+ * process is killed. Other operations only check before they start.
+ */
+final class AsyncGraph {
+
+  /**
+   * A computation that may be abandoned through {@code cancellation}.
+   */
+  private interface Work<T> {
+    T run(Cancellation cancellation) throws Exception;
+  }
+
+  private final BridgeWords bridgeWords;
+  private final Executor executor;
+  private final Duration timeout; // 为 null 时不设期限
+
+  /**
+   * Runs the operations on the common fork-join pool without a deadline.
+   */
+  AsyncGraph(BridgeWords bridgeWords) {
+    this(bridgeWords, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Runs the operations on {@code executor} without a deadline.
+   */
+  AsyncGraph(BridgeWords bridgeWords, Executor executor) {
+    this(bridgeWords, executor, null);
+  }
+
+  private AsyncGraph(BridgeWords bridgeWords, Executor executor, Duration timeout) {
+    this.bridgeWords = bridgeWords;
+    this.executor = executor;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Returns a facade over the same graph and executor whose futures time out after
+   * {@code timeout}.
+   */
+  AsyncGraph withTimeout(Duration timeout) {
+    return new AsyncGraph(bridgeWords, executor, timeout);
+  }
+
+  /**
+   * Returns a pool of {@code threads} threads that queues at most {@code maxQueued} tasks and
+   * rejects any more, so that under overload new futures fail at once instead of waiting.
+   */
+  static ExecutorService boundedExecutor(int threads, int maxQueued) {
+    BlockingQueue<Runnable> queue = maxQueued == 0
+            ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(maxQueued);
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+            new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  CompactGraph graph() {
+    return bridgeWords.graph();
+  }
+
+  /**
+   * Completes with the bridge words from {@code word1} to {@code word2}, empty if there are none
+   * or if either word is not in the graph.
+   */
+  CompletableFuture<List<String>> bridgeWords(String word1, String word2) {
+    return submit(cancellation -> bridgeWords.lookup(word1, word2));
+  }
+
+  /**
+   * Completes with {@code text} with bridge words inserted, as
+   * {@link Main.Graph#generateNewText(String, BridgeWords)}.
+   */
+  CompletableFuture<String> generateNewText(String text) {
+    return submit(cancellation -> Main.Graph.generateNewText(text, bridgeWords));
+  }
+
+  /**
+   * Completes with a shortest path from {@code word1} to {@code word2}, or an empty optional if
+   * there is none. Fails with {@link IllegalArgumentException} if either word is not in the
+   * graph.
+   */
+  CompletableFuture<Optional<BidirectionalDijkstra.Path>> shortestPath(String word1,
+                                                                       String word2) {
+    return submit(cancellation -> Optional.ofNullable(
+            BidirectionalDijkstra.find(graph(), idOf(word1), idOf(word2))));
+  }
+
+  /**
+   * Completes with the shortest paths from {@code word} to every other word, the work behind
+   * {@link Main.Graph#calcShortestPathSingleWord}.
+   */
+  CompletableFuture<ShortestPathTree> shortestPathsFrom(String word) {
+    return submit(cancellation ->
+            ShortestPathTree.compute(graph(), idOf(word), -1, cancellation));
+  }
+
+  /**
+   * Completes with up to {@code k} loopless paths from {@code word1} to {@code word2}, shortest
+   * first, as found by {@link KShortestPaths#find}.
+   */
+  CompletableFuture<List<BidirectionalDijkstra.Path>> kShortestPaths(String word1, String word2,
+                                                                     int k) {
+    return submit(cancellation -> KShortestPaths.find(graph(), idOf(word1), idOf(word2), k));
+  }
+
+  /**
+   * Writes the DOT text of the graph to {@code dotFile} and renders it to {@code imageFile} with
+   * Graphviz, completing with {@code imageFile}.
+   */
+  CompletableFuture<Path> renderDot(DotWriter.Options options, Path dotFile, Path imageFile) {
+    return start(cancellation -> {
+      DotWriter.write(graph(), options, dotFile, cancellation);
+      return DotWriter.renderAsync(dotFile, imageFile);
+    });
+  }
+
+  /**
+   * Completes with walks {@code 0} to {@code count - 1} of the batch seeded with {@code seed},
+   * as words; the walks are those of {@link RandomWalker#walks}.
+   */
+  CompletableFuture<List<List<String>>> randomWalks(long seed, int count, int maxLength,
+                                                    RandomWalker.Termination termination,
+                                                    boolean weighted) {
+    return submit(cancellation -> {
+      CompactGraph graph = graph();
+      RandomWalker walker = new RandomWalker(graph, weighted);
+      List<List<String>> walks = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        cancellation.check();
+        int[] nodes = walker.walk(seed, i, maxLength, termination);
+        List<String> words = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+          words.add(graph.word(node));
+        }
+        walks.add(words);
+      }
+      return walks;
+    });
+  }
+
+  private int idOf(String word) {
+    int id = graph().idOf(word);
+    if (id < 0) {
+      throw new IllegalArgumentException("Not in the graph: " + word);
+    }
+    return id;
+  }
+
+  private <T> CompletableFuture<T> submit(Work<T> work) {
+    return start(cancellation -> CompletableFuture.completedFuture(work.run(cancellation)));
+  }
+
+  /**
+   * Runs {@code work} on the executor and completes the returned future like the future it
+   * returns. Completing the returned future first, by cancellation or timeout, abandons the work
+   * and cancels that inner future.
+   */
+  private <T> CompletableFuture<T> start(Work<CompletableFuture<T>> work) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    if (timeout != null) {
+      result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    Cancellation cancellation = Cancellation.of(result);
+    try {
+      executor.execute(() -> {
+        if (result.isDone()) {
+          return; // 排队期间已被取消或超时
+        }
+        try {
+          CompletableFuture<T> inner = work.run(cancellation);
+          inner.whenComplete((value, e) -> {
+            if (e == null) {
+              result.complete(value);
+            } else if (e instanceof CompletionException && e.getCause() != null) {
+              result.completeExceptionally(e.getCause());
+            } else {
+              result.completeExceptionally(e);
+            }
+          });
+          result.whenComplete((value, e) -> inner.cancel(false));
+        } catch (Throwable e) {
+          // 已完成的 future 忽略取消检查抛出的异常
+          result.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Point-to-point shortest paths over a {@link CompactGraph} by bidirectional Dijkstra.
+ *
+ * <p>One search grows forward from the source over the outgoing edges and another backward from
+ * the target over the reverse index, always advancing the side with the smaller frontier. Every
+ * edge scanned between the two searches gives a candidate path, and the search stops once the
+ * two smallest frontier distances add up to at least the best candidate. Short queries then
+ * settle the nodes near both ends instead of everything closer to the source than the target.
+ *
+ * <p>The per-node arrays are taken from a small shared pool, at most one per processor, and only
+ * the entries a search touched are reset afterwards, so a query costs time in proportion to the
+ * nodes it reaches, not to the graph, and idle threads hold no arrays.
+ */
+final class BidirectionalDijkstra {
+
+  /**
+   * A shortest path as node ids from source to target, with its total weight.
+   */
+  static final class Path {
+    private final CompactGraph graph;
+    private final int[] nodes;
+    private final int length;
+
+    Path(CompactGraph graph, int[] nodes, int length) {
+      this.graph = graph;
+      this.nodes = nodes;
+      this.length = length;
+    }
+
+    int[] nodes() {
+      return nodes.clone();
+    }
+
+    int length() {
+      return length;
+    }
+
+    List<String> words() {
+      List<String> words = new ArrayList<>(nodes.length);
+      for (int node : nodes) {
+        words.add(graph.word(node));
+      }
+      return words;
+    }
+  }
+
+  private static final int UNREACHABLE = ShortestPathTree.UNREACHABLE;
+
+  private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors();
+  private static final ConcurrentLinkedQueue<Workspace> POOL = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger POOLED = new AtomicInteger();
+
+  private BidirectionalDijkstra() {
+  }
+
+  /**
+   * Returns a shortest path from {@code source} to {@code target}, or null if there is none.
+   */
+  static Path find(CompactGraph graph, int source, int target) {
+    if (source == target) {
+      return new Path(graph, new int[] {source}, 0);
+    }
+    long start = Metrics.start();
+    Workspace w = acquire(graph.nodeCount());
+    try {
+      return search(graph, source, target, w);
+    } finally {
+      w.reset();
+      release(w);
+      Metrics.record(Metrics.Operation.DIJKSTRA, start);
+    }
+  }
+
+  private static Workspace acquire(int nodeCount) {
+    Workspace w = POOL.poll();
+    if (w != null) {
+      POOLED.decrementAndGet();
+      if (w.capacity() >= nodeCount) {
+        return w;
+      }
+      // 池中的工作区属于更小的图，丢弃后重新分配
+    }
+    return new Workspace(nodeCount);
+  }
+
+  private static void release(Workspace w) {
+    if (POOLED.incrementAndGet() <= MAX_POOLED) {
+      POOL.offer(w);
+    } else {
+      POOLED.decrementAndGet();
+    }
+  }
+
+  private static Path search(CompactGraph graph, int source, int target, Workspace w) {
+    w.touch(source);
+    w.touch(target);
+    w.forwardDist[source] = 0;
+    w.backwardDist[target] = 0;
+    w.forwardQueue.insertOrDecrease(source, 0);
+    w.backwardQueue.insertOrDecrease(target, 0);
+
+    // 当前最优路径经过的边 meetFrom -> meetTo
+    int best = UNREACHABLE;
+    int meetFrom = -1;
+    int meetTo = -1;
+    long nodesSettled = 0;
+    long edgesRelaxed = 0;
+    while (!w.forwardQueue.isEmpty() && !w.backwardQueue.isEmpty()
+            && (long) w.forwardQueue.minKey() + w.backwardQueue.minKey() < best) {
+      nodesSettled++;
+      if (w.forwardQueue.size() <= w.backwardQueue.size()) {
+        int node = w.forwardQueue.poll();
+        w.forwardSettled[node] = true;
+        edgesRelaxed += graph.outDegree(node);
+        for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+          int neighbor = graph.target(e);
+          int newDist = w.forwardDist[node] + graph.weight(e);
+          if (!w.forwardSettled[neighbor] && newDist < w.forwardDist[neighbor]) {
+            w.touch(neighbor);
+            w.forwardDist[neighbor] = newDist;
+            w.forwardPrevious[neighbor] = node;
+            w.forwardQueue.insertOrDecrease(neighbor, newDist);
+          }
+          if (w.backwardDist[neighbor] != UNREACHABLE
+                  && (long) newDist + w.backwardDist[neighbor] < best) {
+            best = newDist + w.backwardDist[neighbor];
+            meetFrom = node;
+            meetTo = neighbor;
+          }
+        }
+      } else {
+        int node = w.backwardQueue.poll();
+        w.backwardSettled[node] = true;
+        edgesRelaxed += graph.inDegree(node);
+        for (int r = graph.reverseEdgeStart(node); r < graph.reverseEdgeEnd(node); r++) {
+          int neighbor = graph.reverseSource(r);
+          int newDist = w.backwardDist[node] + graph.reverseWeight(r);
+          if (!w.backwardSettled[neighbor] && newDist < w.backwardDist[neighbor]) {
+            w.touch(neighbor);
+            w.backwardDist[neighbor] = newDist;
+            w.backwardNext[neighbor] = node;
+            w.backwardQueue.insertOrDecrease(neighbor, newDist);
+          }
+          if (w.forwardDist[neighbor] != UNREACHABLE
+                  && (long) newDist + w.forwardDist[neighbor] < best) {
+            best = newDist + w.forwardDist[neighbor];
+            meetFrom = neighbor;
+            meetTo = node;
+          }
+        }
+      }
+    }
+    Metrics.dijkstra(nodesSettled, edgesRelaxed);
+    if (best == UNREACHABLE) {
+      return null;
+    }
+
+    int forwardHops = 0;
+    for (int at = meetFrom; at != -1; at = w.forwardPrevious[at]) {
+      forwardHops++;
+    }
+    int backwardHops = 0;
+    for (int at = meetTo; at != -1; at = w.backwardNext[at]) {
+      backwardHops++;
+    }
+    int[] nodes = new int[forwardHops + backwardHops];
+    int i = forwardHops;
+    for (int at = meetFrom; at != -1; at = w.forwardPrevious[at]) {
+      nodes[--i] = at;
+    }
+    i = forwardHops;
+    for (int at = meetTo; at != -1; at = w.backwardNext[at]) {
+      nodes[i++] = at;
+    }
+    return new Path(graph, nodes, best);
+  }
+
+  /**
+   * Search state for graphs of up to {@code capacity} nodes. Between searches every distance is
+   * {@link #UNREACHABLE}, every link -1 and nothing is settled or queued.
+   */
+  private static final class Workspace {
+    final int[] forwardDist;
+    final int[] backwardDist;
+    final int[] forwardPrevious;
+    final int[] backwardNext;
+    final boolean[] forwardSettled;
+    final boolean[] backwardSettled;
+    final IndexedMinHeap forwardQueue;
+    final IndexedMinHeap backwardQueue;
+    private int[] touched = new int[64];
+    private int touchedCount;
+
+    Workspace(int capacity) {
+      forwardDist = new int[capacity];
+      backwardDist = new int[capacity];
+      forwardPrevious = new int[capacity];
+      backwardNext = new int[capacity];
+      forwardSettled = new boolean[capacity];
+      backwardSettled = new boolean[capacity];
+      forwardQueue = new IndexedMinHeap(capacity);
+      backwardQueue = new IndexedMinHeap(capacity);
+      Arrays.fill(forwardDist, UNREACHABLE);
+      Arrays.fill(backwardDist, UNREACHABLE);
+      Arrays.fill(forwardPrevious, -1);
+      Arrays.fill(backwardNext, -1);
+    }
+
+    int capacity() {
+      return forwardDist.length;
+    }
+
+    /**
+     * Remembers {@code node} for {@link #reset} the first time either search reaches it.
+     */
+    void touch(int node) {
+      if (forwardDist[node] == UNREACHABLE && backwardDist[node] == UNREACHABLE) {
+        if (touchedCount == touched.length) {
+          touched = Arrays.copyOf(touched, touchedCount * 2);
+        }
+        touched[touchedCount++] = node;
+      }
+    }
+
+    void reset() {
+      for (int i = 0; i < touchedCount; i++) {
+        int node = touched[i];
+        forwardDist[node] = UNREACHABLE;
+        backwardDist[node] = UNREACHABLE;
+        forwardPrevious[node] = -1;
+        backwardNext[node] = -1;
+        forwardSettled[node] = false;
+        backwardSettled[node] = false;
+      }
+      touchedCount = 0;
+      forwardQueue.clear();
+      backwardQueue.clear();
+    }
+  }
+}
@@ -0,0 +1,420 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.random.RandomGenerator;
+
+/**
+ * Structured bridge-word lookups over a {@link CompactGraph}.
+ *
+ * <p>A bridge word {@code b} of {@code (word1, word2)} is a word with edges
+ * {@code word1 -> b} and {@code b -> word2}. A {@link #direct} instance scans the successors of
+ * {@code word1} on every lookup; an {@link #indexed} instance precomputes every two-hop pair once
+ * so that each lookup is a single probe of a long-keyed open-addressing table. Both return the
+ * bridges in the order {@link Main.Graph#queryBridgeWords} lists them. {@link #forGraph} picks
+ * one of the two from the size of the index.
+ *
+ * <p>An indexed instance can follow a growing graph through {@link #withNewEdges}: the index is
+ * shared by all versions and only gains entries, each tagged with the version that added it, so
+ * an older instance keeps seeing exactly the bridges of its own graph.
+ */
+final class BridgeWords {
+
+  /**
+   * The most two-hop paths {@link #forGraph} indexes by default.
+   */
+  static final long DEFAULT_MAX_INDEXED_PATHS = 1L << 22;
+
+  private static final int[] NONE = new int[0];
+
+  private final CompactGraph graph;
+  private final Index index;
+  private final long version;
+
+  private BridgeWords(CompactGraph graph, Index index, long version) {
+    this.graph = graph;
+    this.index = index;
+    this.version = version;
+  }
+
+  /**
+   * Returns lookups that scan the graph on every call and need no extra memory.
+   */
+  static BridgeWords direct(CompactGraph graph) {
+    return new BridgeWords(graph, null, 0);
+  }
+
+  /**
+   * Chooses lookups for {@code graph} from {@code -Dlab1.bridgeIndex}: {@code true} always
+   * indexes, {@code false} never does, and the default {@code auto} indexes a heap graph with at
+   * most {@code -Dlab1.bridgeIndexMaxPaths} (default {@link #DEFAULT_MAX_INDEXED_PATHS}) two-hop
+   * paths.
+   */
+  static BridgeWords forGraph(CompactGraph graph) {
+    String mode = System.getProperty("lab1.bridgeIndex", "auto").toLowerCase(Locale.ROOT);
+    switch (mode) {
+      case "true":
+        return indexed(graph);
+      case "false":
+        return direct(graph);
+      case "auto":
+        return forGraph(graph, Long.getLong("lab1.bridgeIndexMaxPaths",
+                DEFAULT_MAX_INDEXED_PATHS));
+      default:
+        throw new IllegalArgumentException("Invalid lab1.bridgeIndex: " + mode);
+    }
+  }
+
+  /**
+   * Indexes {@code graph} if it is on the heap and has at most {@code maxPaths} two-hop paths, and
+   * scans it directly otherwise.
+   */
+  static BridgeWords forGraph(CompactGraph graph, long maxPaths) {
+    // 堆外图通常远大于堆，两跳索引放不下
+    if (graph.isOffHeap() || twoHopPaths(graph) > maxPaths) {
+      return direct(graph);
+    }
+    return indexed(graph);
+  }
+
+  /**
+   * Returns the number of paths of length two, the number of bridges an index would hold: the
+   * sum over all nodes of in-degree times out-degree.
+   */
+  static long twoHopPaths(CompactGraph graph) {
+    int[] inDegrees = new int[graph.nodeCount()];
+    for (int node = 0; node < inDegrees.length; node++) {
+      for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+        inDegrees[graph.target(e)]++;
+      }
+    }
+    long paths = 0;
+    for (int node = 0; node < inDegrees.length; node++) {
+      paths += (long) inDegrees[node] * graph.outDegree(node);
+    }
+    return paths;
+  }
+
+  /**
+   * Precomputes the bridges of every two-hop pair. The index holds one entry per path of length
+   * two, so it is best suited to graphs whose in- and out-degrees are moderate; see
+   * {@link #forGraph}.
+   */
+  static BridgeWords indexed(CompactGraph graph) {
+    int nodeCount = graph.nodeCount();
+    int[] counts = new int[nodeCount];
+    int[][] lists = new int[nodeCount][];
+    int[] touched = new int[nodeCount];
+    Index index = new Index();
+    for (int from = 0; from < nodeCount; from++) {
+      // 先统计 from 到每个两跳终点的桥接词个数，再按后继顺序填入
+      int touchedCount = 0;
+      for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+        int bridge = graph.target(e);
+        for (int f = graph.edgeStart(bridge); f < graph.edgeEnd(bridge); f++) {
+          if (counts[graph.target(f)]++ == 0) {
+            touched[touchedCount++] = graph.target(f);
+          }
+        }
+      }
+      for (int i = 0; i < touchedCount; i++) {
+        lists[touched[i]] = new int[counts[touched[i]]];
+        counts[touched[i]] = 0;
+      }
+      for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+        int bridge = graph.target(e);
+        for (int f = graph.edgeStart(bridge); f < graph.edgeEnd(bridge); f++) {
+          int to = graph.target(f);
+          lists[to][counts[to]++] = bridge;
+        }
+      }
+      for (int i = 0; i < touchedCount; i++) {
+        int to = touched[i];
+        index.put(Main.Graph.edgeKey(from, to), new Entry(lists[to], null));
+        lists[to] = null;
+        counts[to] = 0;
+      }
+    }
+    return new BridgeWords(graph, index, 0);
+  }
+
+  /**
+   * Returns whether lookups are served from a precomputed index.
+   */
+  boolean isIndexed() {
+    return index != null;
+  }
+
+  /**
+   * Returns lookups over {@code newGraph}, which must be this graph plus the edges
+   * {@code newEdges} (as {@link Main.Graph#edgeKey} values over the ids of {@code newGraph}), with
+   * the ids of existing words unchanged. A direct instance is simply rebound; an indexed one adds
+   * only the two-hop pairs created by the new edges, tagged with {@code newVersion}, which must be
+   * larger than every version used before. Calls that share an index must not overlap.
+   */
+  BridgeWords withNewEdges(CompactGraph newGraph, long[] newEdges, long newVersion) {
+    if (index == null) {
+      return direct(newGraph);
+    }
+    for (long edge : newEdges) {
+      int from = (int) (edge >>> 32);
+      int to = (int) edge;
+      // 新边 from -> to 使 to 成为 (from, to 的后继) 的桥接词
+      for (int e = newGraph.edgeStart(to); e < newGraph.edgeEnd(to); e++) {
+        addBridge(Main.Graph.edgeKey(from, newGraph.target(e)), to, newVersion);
+      }
+      // 并使 from 成为 (from 的前驱, to) 的桥接词
+      for (int r = newGraph.reverseEdgeStart(from); r < newGraph.reverseEdgeEnd(from); r++) {
+        addBridge(Main.Graph.edgeKey(newGraph.reverseSource(r), to), from, newVersion);
+      }
+    }
+    return new BridgeWords(newGraph, index, newVersion);
+  }
+
+  private void addBridge(long pair, int bridge, long newVersion) {
+    Entry old = index.get(pair);
+    if (old == null) {
+      index.put(pair, new Entry(new int[] {bridge}, new long[] {newVersion}));
+    } else if (!old.contains(bridge)) {
+      index.put(pair, old.append(bridge, newVersion));
+    }
+  }
+
+  CompactGraph graph() {
+    return graph;
+  }
+
+  /**
+   * Returns the ids of the bridge words from {@code from} to {@code to}; the array is empty if
+   * there are none and must not be modified.
+   */
+  int[] bridges(int from, int to) {
+    if (index != null) {
+      Entry entry = index.get(Main.Graph.edgeKey(from, to));
+      return entry == null ? NONE : entry.visibleAt(version);
+    }
+    int count = 0;
+    int[] found = NONE;
+    for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+      int bridge = graph.target(e);
+      if (graph.hasEdge(bridge, to)) {
+        if (count == found.length) {
+          found = Arrays.copyOf(found, Math.max(4, count * 2));
+        }
+        found[count++] = bridge;
+      }
+    }
+    return count == found.length ? found : Arrays.copyOf(found, count);
+  }
+
+  /**
+   * Returns the bridge words from {@code word1} to {@code word2}; the list is empty if there are
+   * none or if either word is not in the graph.
+   */
+  List<String> lookup(String word1, String word2) {
+    int from = graph.idOf(word1);
+    int to = graph.idOf(word2);
+    if (from < 0 || to < 0) {
+      return Collections.emptyList();
+    }
+    return toWords(bridges(from, to));
+  }
+
+  /**
+   * Resolves every adjacent pair of {@code ids} in one call. Element {@code i} of the result
+   * holds the bridges from {@code ids[i]} to {@code ids[i + 1]}, and is empty if either id is
+   * negative; the arrays must not be modified.
+   */
+  int[][] bridgesAll(int[] ids) {
+    if (ids.length < 2) {
+      return new int[0][];
+    }
+    int[][] result = new int[ids.length - 1][];
+    for (int i = 0; i + 1 < ids.length; i++) {
+      result[i] = ids[i] < 0 || ids[i + 1] < 0 ? NONE : bridges(ids[i], ids[i + 1]);
+    }
+    return result;
+  }
+
+  /**
+   * Resolves every adjacent pair of {@code words} in one call. Element {@code i} of the result
+   * holds the bridge words from {@code words[i]} to {@code words[i + 1]}.
+   */
+  List<List<String>> lookupAll(String[] words) {
+    int[] ids = new int[words.length];
+    for (int i = 0; i < words.length; i++) {
+      ids[i] = graph.idOf(words[i]);
+    }
+    int[][] bridges = bridgesAll(ids);
+    List<List<String>> result = new ArrayList<>(bridges.length);
+    for (int[] pair : bridges) {
+      result.add(toWords(pair));
+    }
+    return result;
+  }
+
+  /**
+   * Returns a bridge word from {@code from} to {@code to} chosen uniformly at random, or -1 if
+   * there is none, without allocating. A direct instance picks by reservoir sampling while it
+   * scans the successors of {@code from}.
+   */
+  int randomBridge(int from, int to, RandomGenerator random) {
+    if (index != null) {
+      Entry entry = index.get(Main.Graph.edgeKey(from, to));
+      int count = entry == null ? 0 : entry.visibleCount(version);
+      return count == 0 ? -1 : entry.bridges[random.nextInt(count)];
+    }
+    int chosen = -1;
+    int count = 0;
+    for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+      int bridge = graph.target(e);
+      // 第 count 个桥接词以 1/count 的概率替换当前选择
+      if (graph.hasEdge(bridge, to) && random.nextInt(++count) == 0) {
+        chosen = bridge;
+      }
+    }
+    return chosen;
+  }
+
+  private List<String> toWords(int[] ids) {
+    if (ids.length == 0) {
+      return Collections.emptyList();
+    }
+    List<String> words = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      words.add(graph.word(id));
+    }
+    return words;
+  }
+
+  /**
+   * The bridges of one pair. Entries are only ever replaced by longer copies, and bridges are
+   * appended in version order, so the bridges visible at a version always form a prefix.
+   */
+  private static final class Entry {
+    final int[] bridges;
+    final long[] versions; // null 表示全部属于版本 0
+
+    Entry(int[] bridges, long[] versions) {
+      this.bridges = bridges;
+      this.versions = versions;
+    }
+
+    boolean contains(int bridge) {
+      for (int b : bridges) {
+        if (b == bridge) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    Entry append(int bridge, long version) {
+      int n = bridges.length;
+      int[] newBridges = Arrays.copyOf(bridges, n + 1);
+      long[] newVersions = versions == null ? new long[n + 1] : Arrays.copyOf(versions, n + 1);
+      newBridges[n] = bridge;
+      newVersions[n] = version;
+      return new Entry(newBridges, newVersions);
+    }
+
+    int visibleCount(long version) {
+      if (versions == null || versions[versions.length - 1] <= version) {
+        return bridges.length;
+      }
+      int n = 0;
+      while (versions[n] <= version) {
+        n++;
+      }
+      return n;
+    }
+
+    int[] visibleAt(long version) {
+      int n = visibleCount(version);
+      return n == bridges.length ? bridges : Arrays.copyOf(bridges, n);
+    }
+  }
+
+  /**
+   * Open-addressing table from {@link Main.Graph#edgeKey} pairs to their entries, with linear
+   * probing and a load factor of at most 0.5. There is a single writer at a time, but lookups may
+   * run concurrently with it: a slot is taken once its entry is published with release semantics
+   * after its key, and growing builds a new table that replaces the old one only when complete.
+   */
+  private static final class Index {
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(Entry[].class);
+
+    private volatile Table table = new Table(16);
+
+    Entry get(long key) {
+      Table t = table;
+      int mask = t.keys.length - 1;
+      for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+        Entry entry = (Entry) ENTRIES.getAcquire(t.entries, slot);
+        if (entry == null) {
+          return null;
+        }
+        if (t.keys[slot] == key) {
+          return entry;
+        }
+      }
+    }
+
+    /**
+     * Maps {@code key} to {@code entry}, replacing any previous entry.
+     */
+    void put(long key, Entry entry) {
+      Table t = table;
+      int mask = t.keys.length - 1;
+      int slot = mix(key) & mask;
+      while (t.entries[slot] != null) {
+        if (t.keys[slot] == key) {
+          ENTRIES.setRelease(t.entries, slot, entry);
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      t.keys[slot] = key;
+      ENTRIES.setRelease(t.entries, slot, entry);
+      if (2 * ++t.size > t.keys.length) {
+        table = t.grow();
+      }
+    }
+
+    private static int mix(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Table {
+      final long[] keys;
+      final Entry[] entries; // null 表示空槽
+      int size;
+
+      Table(int capacity) {
+        keys = new long[capacity];
+        entries = new Entry[capacity];
+      }
+
+      Table grow() {
+        Table grown = new Table(keys.length * 2);
+        int mask = grown.keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+          if (entries[i] != null) {
+            int slot = mix(keys[i]) & mask;
+            while (grown.entries[slot] != null) {
+              slot = (slot + 1) & mask;
+            }
+            grown.keys[slot] = keys[i];
+            grown.entries[slot] = entries[i];
+          }
+        }
+        grown.size = size;
+        return grown;
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Cooperative cancellation signal for long-running graph computations.
+ *
+ * <p>A computation started for a future calls {@link #check} every so often; once that future is
+ * done, because it was cancelled, timed out or completed by someone else, {@code check} throws a
+ * {@link CancellationException} that unwinds the computation. Nothing is interrupted, so a
+ * computation stops at its next check and never in the middle of updating its own state.
+ */
+final class Cancellation {
+
+  /**
+   * Never cancelled; used by the synchronous entry points.
+   */
+  static final Cancellation NONE = new Cancellation(null);
+
+  private final Future<?> future;
+
+  private Cancellation(Future<?> future) {
+    this.future = future;
+  }
+
+  /**
+   * Returns a signal that fires once {@code future} is done.
+   */
+  static Cancellation of(Future<?> future) {
+    return new Cancellation(future);
+  }
+
+  boolean isCancelled() {
+    return future != null && future.isDone();
+  }
+
+  /**
+   * Throws {@link CancellationException} if the computation should stop.
+   */
+  void check() {
+    if (isCancelled()) {
+      throw new CancellationException("Computation abandoned");
+    }
+  }
+}
@@ -0,0 +1,529 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable word graph in compressed sparse row (CSR) form.
+ *
+ * <p>Every word is interned once to an int id, and the outgoing edges of node {@code n} are the
+ * edge indices {@code edgeStart(n)} to {@code edgeEnd(n) - 1}, each with a target id and a
+ * weight. Ids and edges follow the iteration order of the map the graph was built from, so
+ * output produced by walking a {@code CompactGraph} matches output produced by walking the map.
+ *
+ * <p>The edge arrays are int buffers. A graph built by {@link OffHeapGraphBuilder} keeps them,
+ * its reverse index and its words in direct memory, so its size is bounded by
+ * {@code -XX:MaxDirectMemorySize} instead of the heap and the collector never scans it; every
+ * query works the same on both kinds of graph. A graph loaded by {@link GraphFile} is off-heap
+ * too, with its words and edges in the memory-mapped file.
+ *
+ * <p>A graph published by {@link LiveGraph} may instead be a {@link GraphOverlay} on such a graph,
+ * whose edge indices are not dense: {@code edgeStart(n)} to {@code edgeEnd(n) - 1} are still the
+ * edges of {@code n}, but other indices below the largest one may belong to no node. Code that
+ * keeps arrays indexed by edge, or walks the edge indices from 0 to {@link #edgeCount}, works on
+ * {@link #dense} instead.
+ */
+final class CompactGraph {
+
+  /**
+   * The most ints a single direct buffer can hold.
+   */
+  static final int MAX_DIRECT_INTS = Integer.MAX_VALUE / Integer.BYTES;
+
+  private final int nodeCount;
+  private final String[] words; // 堆外图为 null，单词存放在 offHeapWords 中
+  private final int[] slots; // 开放寻址哈希表，存放 id + 1，0 表示空槽
+  private final OffHeapWords offHeapWords;
+  private final IntBuffer offsets;
+  private final IntBuffer targets;
+  private final IntBuffer weights;
+  private final GraphOverlay overlay; // 仅由 LiveGraph 发布的图不为 null
+  private volatile CompactGraph dense;
+  private volatile Reverse reverse;
+  private volatile GraphAnalytics analytics;
+
+  private CompactGraph(String[] words, int[] offsets, int[] targets, int[] weights) {
+    this.nodeCount = words.length;
+    this.words = words;
+    this.offHeapWords = null;
+    this.offsets = IntBuffer.wrap(offsets);
+    this.targets = IntBuffer.wrap(targets);
+    this.weights = IntBuffer.wrap(weights);
+    this.overlay = null;
+    this.slots = new int[Integer.highestOneBit(Math.max(1, words.length) * 2 - 1) << 1];
+    for (int id = 0; id < words.length; id++) {
+      int mask = slots.length - 1;
+      int slot = hash(words[id].hashCode()) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = id + 1;
+    }
+  }
+
+  private CompactGraph(OffHeapWords words, IntBuffer offsets, IntBuffer targets,
+                       IntBuffer weights) {
+    this.nodeCount = words.size();
+    this.words = null;
+    this.slots = null;
+    this.offHeapWords = words;
+    this.offsets = offsets;
+    this.targets = targets;
+    this.weights = weights;
+    this.overlay = null;
+  }
+
+  private CompactGraph(GraphOverlay overlay) {
+    this.nodeCount = overlay.nodeCount();
+    this.words = null;
+    this.slots = null;
+    this.offHeapWords = null;
+    this.offsets = null;
+    this.targets = null;
+    this.weights = null;
+    this.overlay = overlay;
+  }
+
+  /**
+   * Converts the map form returned by {@link Main.Graph#buildGraph}. Words that only appear as
+   * edge targets are added as nodes without outgoing edges.
+   */
+  static CompactGraph from(Map<String, Map<String, Integer>> graph) {
+    Map<String, Integer> ids = new HashMap<>();
+    String[] words = new String[graph.size()];
+    int edgeCount = 0;
+    for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
+      words[ids.size()] = entry.getKey();
+      ids.put(entry.getKey(), ids.size());
+      edgeCount += entry.getValue().size();
+    }
+    int nodeCount = ids.size();
+    for (Map<String, Integer> neighbors : graph.values()) {
+      for (String neighbor : neighbors.keySet()) {
+        if (!ids.containsKey(neighbor)) {
+          if (nodeCount == words.length) {
+            words = Arrays.copyOf(words, nodeCount * 2);
+          }
+          words[nodeCount] = neighbor;
+          ids.put(neighbor, nodeCount++);
+        }
+      }
+    }
+    words = Arrays.copyOf(words, nodeCount);
+
+    int[] offsets = new int[nodeCount + 1];
+    int[] targets = new int[edgeCount];
+    int[] weights = new int[edgeCount];
+    int edge = 0;
+    int node = 0;
+    for (Map<String, Integer> neighbors : graph.values()) {
+      offsets[node++] = edge;
+      for (Map.Entry<String, Integer> neighbor : neighbors.entrySet()) {
+        targets[edge] = ids.get(neighbor.getKey());
+        weights[edge++] = neighbor.getValue();
+      }
+    }
+    Arrays.fill(offsets, node, nodeCount + 1, edge);
+    return new CompactGraph(words, offsets, targets, weights);
+  }
+
+  /**
+   * Wraps already built CSR arrays. The arrays are not copied and must not be modified
+   * afterwards.
+   */
+  static CompactGraph of(String[] words, int[] offsets, int[] targets, int[] weights) {
+    return new CompactGraph(words, offsets, targets, weights);
+  }
+
+  /**
+   * Wraps an off-heap dictionary and direct or mapped CSR buffers, as built by
+   * {@link OffHeapGraphBuilder} or loaded by {@link GraphFile}. Nothing is copied and nothing may
+   * be modified afterwards.
+   */
+  static CompactGraph offHeap(OffHeapWords words, IntBuffer offsets, IntBuffer targets,
+                              IntBuffer weights) {
+    return new CompactGraph(words, offsets, targets, weights);
+  }
+
+  /**
+   * Wraps an overlay built by {@link GraphOverlay.Builder}.
+   */
+  static CompactGraph of(GraphOverlay overlay) {
+    return new CompactGraph(overlay);
+  }
+
+  /**
+   * Converts back to the map form used by the original {@link Main.Graph} methods.
+   */
+  Map<String, Map<String, Integer>> toMap() {
+    Map<String, Map<String, Integer>> graph = new HashMap<>();
+    for (int node = 0; node < nodeCount; node++) {
+      Map<String, Integer> neighbors = new HashMap<>();
+      for (int e = edgeStart(node); e < edgeEnd(node); e++) {
+        neighbors.put(word(target(e)), weight(e));
+      }
+      graph.put(word(node), neighbors);
+    }
+    return graph;
+  }
+
+  int nodeCount() {
+    return nodeCount;
+  }
+
+  int edgeCount() {
+    return overlay != null ? overlay.edgeCount() : targets.capacity();
+  }
+
+  /**
+   * Returns the overlay this graph consists of, or null for a plain CSR graph.
+   */
+  GraphOverlay overlay() {
+    return overlay;
+  }
+
+  /**
+   * Returns this graph with dense edge indices and the same ids: the graph itself, or for an
+   * overlay a plain heap copy made on first use.
+   */
+  CompactGraph dense() {
+    if (overlay == null) {
+      return this;
+    }
+    CompactGraph d = dense;
+    if (d == null) {
+      // 并发首次访问时可能重复压缩，但结果相同
+      d = overlay.compact();
+      dense = d;
+    }
+    return d;
+  }
+
+  /**
+   * Returns whether the graph lives in direct or mapped memory rather than on the heap.
+   */
+  boolean isOffHeap() {
+    return offHeapWords != null;
+  }
+
+  /**
+   * Returns the id of {@code word}, or -1 if the word is not in the graph.
+   */
+  int idOf(String word) {
+    return idOf(word, 0, word.length(), word.hashCode());
+  }
+
+  /**
+   * Returns the id of the word formed by characters {@code start} to {@code end - 1} of
+   * {@code text}, or -1 if it is not in the graph, without creating a string for it.
+   */
+  int idOf(CharSequence text, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + text.charAt(i); // 与 String.hashCode 相同
+    }
+    return idOf(text, start, end, h);
+  }
+
+  int idOf(CharSequence text, int start, int end, int h) {
+    if (overlay != null) {
+      return overlay.idOf(text, start, end, h);
+    }
+    if (offHeapWords != null) {
+      return offHeapWords.idOf(text, start, end, h);
+    }
+    int mask = slots.length - 1;
+    for (int slot = hash(h) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+      String word = words[slots[slot] - 1];
+      if (word.length() == end - start && regionMatches(word, text, start)) {
+        return slots[slot] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionMatches(String word, CharSequence text, int start) {
+    if (text instanceof String) {
+      return ((String) text).startsWith(word, start);
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (word.charAt(i) != text.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the word of node {@code id}; an off-heap graph decodes a new string on every call.
+   */
+  String word(int id) {
+    if (overlay != null) {
+      return overlay.word(id);
+    }
+    return words != null ? words[id] : offHeapWords.word(id);
+  }
+
+  /**
+   * Appends the word of node {@code id} to {@code out}; unlike {@link #word}, this does not
+   * allocate for ASCII words of an off-heap graph.
+   */
+  void appendWord(int id, StringBuilder out) {
+    if (overlay != null) {
+      overlay.appendWord(id, out);
+    } else if (words != null) {
+      out.append(words[id]);
+    } else {
+      offHeapWords.appendTo(id, out);
+    }
+  }
+
+  int edgeStart(int node) {
+    return overlay != null ? overlay.edgeStart(node) : offsets.get(node);
+  }
+
+  int edgeEnd(int node) {
+    return overlay != null ? overlay.edgeEnd(node) : offsets.get(node + 1);
+  }
+
+  int outDegree(int node) {
+    return edgeEnd(node) - edgeStart(node);
+  }
+
+  /**
+   * Returns the node that edge {@code edge} leaves, found by binary search over the offsets.
+   */
+  int source(int edge) {
+    if (overlay != null) {
+      return overlay.source(edge);
+    }
+    int lo = 0;
+    int hi = nodeCount - 1;
+    // 出度为 0 的节点与下一节点起点相同，取起点不超过 edge 的最后一个
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (offsets.get(mid) <= edge) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  int target(int edge) {
+    return overlay != null ? overlay.target(edge) : targets.get(edge);
+  }
+
+  int weight(int edge) {
+    return overlay != null ? overlay.weight(edge) : weights.get(edge);
+  }
+
+  /**
+   * Returns whether there is an edge from {@code from} to {@code to}.
+   */
+  boolean hasEdge(int from, int to) {
+    for (int e = edgeStart(from), end = edgeEnd(from); e < end; e++) {
+      if (target(e) == to) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the first reverse-edge index of {@code node}. Reverse edges {@code reverseEdgeStart(n)}
+   * to {@code reverseEdgeEnd(n) - 1} are the edges that point to {@code n}, ordered by source id.
+   * The reverse index is built on first use.
+   */
+  int reverseEdgeStart(int node) {
+    return overlay != null ? overlay.reverseEdgeStart(node) : reverse().offsets.get(node);
+  }
+
+  int reverseEdgeEnd(int node) {
+    return overlay != null ? overlay.reverseEdgeEnd(node) : reverse().offsets.get(node + 1);
+  }
+
+  int inDegree(int node) {
+    return reverseEdgeEnd(node) - reverseEdgeStart(node);
+  }
+
+  /**
+   * Returns the source node of reverse edge {@code reverseEdge}.
+   */
+  int reverseSource(int reverseEdge) {
+    return overlay != null
+            ? overlay.reverseSource(reverseEdge) : reverse().sources.get(reverseEdge);
+  }
+
+  int reverseWeight(int reverseEdge) {
+    if (overlay != null) {
+      return weight(edgeStart(reverseSource(reverseEdge)) + reverseEdgeOffset(reverseEdge));
+    }
+    return weights.get(reverse().edges.get(reverseEdge));
+  }
+
+  /**
+   * Returns the position of the forward edge of {@code reverseEdge} among the outgoing edges of
+   * its source, i.e. that edge is {@code edgeStart(reverseSource(reverseEdge)) + offset}.
+   */
+  int reverseEdgeOffset(int reverseEdge) {
+    if (overlay != null) {
+      return overlay.reverseEdgeOffset(reverseEdge);
+    }
+    Reverse r = reverse();
+    return r.edges.get(reverseEdge) - offsets.get(r.sources.get(reverseEdge));
+  }
+
+  /**
+   * Returns the PageRank, degree and frequency rankings of this graph, computed on the common
+   * fork-join pool on first use and kept with the graph afterwards.
+   */
+  GraphAnalytics analytics() {
+    if (overlay != null) {
+      return dense().analytics(); // 排行榜按边编号索引，需要连续的编号
+    }
+    GraphAnalytics a = analytics;
+    if (a == null) {
+      // 与反向索引相同，并发首次访问时可能重复计算
+      a = GraphAnalytics.compute(this);
+      analytics = a;
+    }
+    return a;
+  }
+
+  /**
+   * Rough retained heap size in bytes, assuming 64-bit compressed references and Latin-1 words.
+   * Counts the reverse index and analytics only once they have been built; off-heap storage is
+   * not included. An overlay counts its base graph and its logs.
+   */
+  long estimatedBytes() {
+    if (overlay != null) {
+      return overlay.base().estimatedBytes() + overlay.estimatedBytes();
+    }
+    if (offHeapWords != null) {
+      return 0;
+    }
+    long bytes = arrayBytes(words.length) + arrayBytes(slots.length) + arrayBytes(offsets)
+            + arrayBytes(targets) + arrayBytes(weights);
+    for (String word : words) {
+      bytes += 24 + align(16L + word.length()); // String 对象加 byte[]
+    }
+    Reverse r = reverse;
+    if (r != null) {
+      bytes += arrayBytes(r.offsets) + arrayBytes(r.sources) + arrayBytes(r.edges);
+    }
+    GraphAnalytics a = analytics;
+    if (a != null) {
+      bytes += a.estimatedBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Direct memory held by an off-heap graph in bytes, or 0 for a heap graph.
+   */
+  long offHeapBytes() {
+    if (overlay != null) {
+      return overlay.base().offHeapBytes();
+    }
+    if (offHeapWords == null) {
+      return 0;
+    }
+    long ints = offsets.capacity() + 2L * targets.capacity();
+    Reverse r = reverse;
+    if (r != null) {
+      ints += r.offsets.capacity() + 2L * r.sources.capacity();
+    }
+    return offHeapWords.offHeapBytes() + Integer.BYTES * ints;
+  }
+
+  /**
+   * Allocates a zeroed direct buffer of {@code count} native-order ints.
+   *
+   * @throws IllegalStateException if {@code count} exceeds {@link #MAX_DIRECT_INTS}
+   */
+  static IntBuffer directInts(long count) {
+    if (count > MAX_DIRECT_INTS) {
+      throw new IllegalStateException("Off-heap table too large: " + count + " ints");
+    }
+    return directBytes(Integer.BYTES * count).asIntBuffer();
+  }
+
+  /**
+   * Allocates a zeroed direct buffer of {@code count} bytes in native order.
+   *
+   * @throws IllegalStateException if {@code count} does not fit in one buffer
+   */
+  static ByteBuffer directBytes(long count) {
+    if (count > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Off-heap table too large: " + count + " bytes");
+    }
+    return ByteBuffer.allocateDirect((int) count).order(ByteOrder.nativeOrder());
+  }
+
+  private static long arrayBytes(int length) {
+    return align(16L + 4L * length);
+  }
+
+  private static long arrayBytes(IntBuffer buffer) {
+    return arrayBytes(buffer.capacity());
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  private Reverse reverse() {
+    Reverse r = reverse;
+    if (r == null) {
+      // 并发首次访问时可能重复构建，但结果相同
+      r = new Reverse(this);
+      reverse = r;
+    }
+    return r;
+  }
+
+  /**
+   * Incoming edges in CSR form, each pointing back to its forward edge for the weight. Kept in
+   * the same kind of memory as the graph itself.
+   */
+  private static final class Reverse {
+    final IntBuffer offsets;
+    final IntBuffer sources;
+    final IntBuffer edges;
+
+    Reverse(CompactGraph graph) {
+      int nodeCount = graph.nodeCount();
+      int edgeCount = graph.edgeCount();
+      boolean direct = graph.isOffHeap();
+      offsets = direct ? directInts(nodeCount + 1L) : IntBuffer.allocate(nodeCount + 1);
+      sources = direct ? directInts(edgeCount) : IntBuffer.allocate(edgeCount);
+      edges = direct ? directInts(edgeCount) : IntBuffer.allocate(edgeCount);
+      for (int e = 0; e < edgeCount; e++) {
+        int target = graph.targets.get(e);
+        offsets.put(target + 1, offsets.get(target + 1) + 1);
+      }
+      for (int node = 0; node < nodeCount; node++) {
+        offsets.put(node + 1, offsets.get(node + 1) + offsets.get(node));
+      }
+      IntBuffer next = direct ? directInts(nodeCount) : IntBuffer.allocate(nodeCount);
+      next.put(0, offsets, 0, nodeCount);
+      for (int node = 0; node < nodeCount; node++) {
+        for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+          int target = graph.targets.get(e);
+          int slot = next.get(target);
+          next.put(target, slot + 1);
+          sources.put(slot, node);
+          edges.put(slot, e);
+        }
+      }
+    }
+  }
+
+  private static int hash(int h) {
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,521 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds one word graph from many text files, ingesting them concurrently.
+ *
+ * <p>Each file is tokenized like {@link Main.Graph#buildGraphStreaming}, but the files are
+ * separate documents: no edge joins the last word of one file to the first word of the next, so
+ * the graph is the union of the per-file graphs with their edge weights added. A fixed number of
+ * workers take files from a shared counter, intern words into one concurrent dictionary and
+ * count edges by {@link Main.Graph#edgeKey} in a primitive hash table of their own; the tables
+ * are merged once all files are done. Nodes are ordered by word and the edges of each node by
+ * target, so the result does not depend on the order in which workers finish.
+ *
+ * <p>With provenance enabled, the edge counts of every file are kept as well, and
+ * {@link Result#provenance} tells which files contributed each edge and how often.
+ */
+final class CorpusBuilder {
+
+  /**
+   * Receives progress after each ingested file. Called from the worker threads, so
+   * implementations must be thread-safe.
+   */
+  interface Progress {
+    void fileDone(int filesDone, int fileCount, long bytesDone, long totalBytes,
+                  long elapsedNanos);
+  }
+
+  /**
+   * The built graph and the files it was built from.
+   */
+  static final class Result {
+    private final CompactGraph graph;
+    private final List<Path> sources;
+    private final Provenance provenance;
+
+    Result(CompactGraph graph, List<Path> sources, Provenance provenance) {
+      this.graph = graph;
+      this.sources = sources;
+      this.provenance = provenance;
+    }
+
+    CompactGraph graph() {
+      return graph;
+    }
+
+    /**
+     * The ingested files; provenance refers to them by index into this list.
+     */
+    List<Path> sources() {
+      return sources;
+    }
+
+    /**
+     * Returns the per-file edge counts, or null if the graph was built without them.
+     */
+    Provenance provenance() {
+      return provenance;
+    }
+  }
+
+  /**
+   * For every edge of the graph, the files that contain it and its count in each, in CSR form:
+   * edge {@code e} has the entries {@code start(e)} to {@code end(e) - 1}, ordered by file.
+   */
+  static final class Provenance {
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] counts;
+
+    Provenance(int[] offsets, int[] sources, int[] counts) {
+      this.offsets = offsets;
+      this.sources = sources;
+      this.counts = counts;
+    }
+
+    int start(int edge) {
+      return offsets[edge];
+    }
+
+    int end(int edge) {
+      return offsets[edge + 1];
+    }
+
+    /**
+     * Returns the index into {@link Result#sources} of entry {@code entry}.
+     */
+    int source(int entry) {
+      return sources[entry];
+    }
+
+    int count(int entry) {
+      return counts[entry];
+    }
+  }
+
+  private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+  private CorpusBuilder() {
+  }
+
+  /**
+   * Returns whether {@code spec} names more than a single file: an existing directory, a glob
+   * pattern, or a file list written as {@code @list.txt}.
+   */
+  static boolean isCorpus(String spec) {
+    return spec.startsWith("@") || isGlob(spec) || Files.isDirectory(Paths.get(spec));
+  }
+
+  /**
+   * Expands {@code spec} into the files it names, sorted and without duplicates. A directory
+   * stands for every regular file below it, a glob such as {@code docs/**}{@code /*.txt} for the
+   * files below its fixed prefix that match it, and {@code @list.txt} for the specs listed in
+   * that file, one per line, skipping blank lines and lines starting with {@code #}. Anything
+   * else is taken as a single file.
+   */
+  static List<Path> resolve(String spec) throws IOException {
+    Set<Path> files = new LinkedHashSet<>();
+    if (spec.startsWith("@")) {
+      for (String line : Files.readAllLines(Paths.get(spec.substring(1)),
+              StandardCharsets.UTF_8)) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#") && !line.startsWith("@")) {
+          files.addAll(resolve(line));
+        }
+      }
+      return new ArrayList<>(files);
+    }
+    if (isGlob(spec)) {
+      // 从第一个通配符之前的目录开始遍历
+      int firstGlob = firstGlobChar(spec);
+      int slash = Math.max(spec.lastIndexOf('/', firstGlob), spec.lastIndexOf('\\', firstGlob));
+      Path base = Paths.get(slash < 0 ? "" : spec.substring(0, slash + 1));
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+      for (Path file : walk(base)) {
+        if (matcher.matches(file)) {
+          files.add(file);
+        }
+      }
+      return new ArrayList<>(files);
+    }
+    Path path = Paths.get(spec);
+    if (Files.isDirectory(path)) {
+      return walk(path);
+    }
+    return List.of(path);
+  }
+
+  /**
+   * Builds the graph of the files named by {@code spec} (see {@link #resolve}) on one worker per
+   * processor, without provenance.
+   */
+  static Result build(String spec, Progress progress) throws IOException {
+    return build(resolve(spec), Runtime.getRuntime().availableProcessors(), false, progress);
+  }
+
+  /**
+   * Builds the graph of {@code files} on {@code threads} workers, keeping per-file edge counts
+   * if {@code provenance} is set. {@code progress} may be null.
+   */
+  static Result build(List<Path> files, int threads, boolean provenance, Progress progress)
+          throws IOException {
+    long start = Metrics.start();
+    long[] sizes = new long[files.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = Files.size(files.get(i));
+    }
+    Ingest ingest = new Ingest(files, sizes, provenance, progress);
+    int workers = Math.max(1, Math.min(threads, files.size()));
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<EdgeCounts> partials = new ArrayList<>();
+    try {
+      List<Future<EdgeCounts>> futures = new ArrayList<>();
+      for (int i = 0; i < workers; i++) {
+        futures.add(pool.submit(ingest::work));
+      }
+      for (Future<EdgeCounts> future : futures) {
+        partials.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      ingest.failed = true;
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      throw new IOException("Failed to ingest corpus", cause);
+    } catch (InterruptedException e) {
+      ingest.failed = true;
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while ingesting corpus", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    Result result = ingest.assemble(partials);
+    Metrics.record(Metrics.Operation.BUILD_GRAPH_CORPUS, start);
+    return result;
+  }
+
+  /**
+   * Returns progress that prints files, megabytes and throughput to {@code out} at most once a
+   * second, and once more when the last file is done.
+   */
+  static Progress printTo(PrintStream out) {
+    AtomicLong lastPrint = new AtomicLong(System.nanoTime());
+    return (filesDone, fileCount, bytesDone, totalBytes, elapsedNanos) -> {
+      long now = System.nanoTime();
+      long last = lastPrint.get();
+      if (filesDone == fileCount
+              || (now - last >= PROGRESS_INTERVAL_NANOS && lastPrint.compareAndSet(last, now))) {
+        out.printf("Ingested %d/%d files, %.1f/%.1f MB, %.1f MB/s%n", filesDone, fileCount,
+                bytesDone / 1e6, totalBytes / 1e6, bytesDone * 1e3 / Math.max(1, elapsedNanos));
+      }
+    };
+  }
+
+  private static List<Path> walk(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static boolean isGlob(String spec) {
+    return firstGlobChar(spec) < spec.length();
+  }
+
+  private static int firstGlobChar(String spec) {
+    for (int i = 0; i < spec.length(); i++) {
+      char c = spec.charAt(i);
+      if (c == '*' || c == '?' || c == '[' || c == '{') {
+        return i;
+      }
+    }
+    return spec.length();
+  }
+
+  /**
+   * State shared by the workers of one build.
+   */
+  private static final class Ingest {
+    private final List<Path> files;
+    private final long[] sizes;
+    private final boolean keepProvenance;
+    private final Progress progress;
+    private final long totalBytes;
+    private final long startNanos = System.nanoTime();
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger nextFile = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final long[][] fileEdges;
+    private final int[][] fileCounts;
+    private volatile boolean failed;
+
+    Ingest(List<Path> files, long[] sizes, boolean keepProvenance, Progress progress) {
+      this.files = files;
+      this.sizes = sizes;
+      this.keepProvenance = keepProvenance;
+      this.progress = progress;
+      this.totalBytes = Arrays.stream(sizes).sum();
+      this.fileEdges = keepProvenance ? new long[files.size()][] : null;
+      this.fileCounts = keepProvenance ? new int[files.size()][] : null;
+    }
+
+    /**
+     * Ingests files until none are left and returns this worker's edge counts.
+     */
+    EdgeCounts work() {
+      EdgeCounts edges = new EdgeCounts();
+      int index;
+      while (!failed && (index = nextFile.getAndIncrement()) < files.size()) {
+        Path file = files.get(index);
+        // 每个文件从头开始计数，文件之间不产生边
+        EdgeCounts counts = keepProvenance ? new EdgeCounts() : edges;
+        FileSink sink = new FileSink(counts);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+          WordTokenizer.tokenize(reader, sink);
+        } catch (IOException e) {
+          failed = true; // 让其他工作线程尽快停止
+          throw new UncheckedIOException(e);
+        }
+        if (keepProvenance) {
+          long[] keys = new long[counts.size()];
+          int[] values = new int[counts.size()];
+          int i = 0;
+          for (int slot = 0; slot < counts.capacity(); slot++) {
+            if (counts.key(slot) != EdgeCounts.EMPTY) {
+              keys[i] = counts.key(slot);
+              values[i++] = counts.count(slot);
+              edges.add(counts.key(slot), counts.count(slot));
+            }
+          }
+          fileEdges[index] = keys;
+          fileCounts[index] = values;
+        }
+        long bytes = bytesDone.addAndGet(sizes[index]);
+        int done = filesDone.incrementAndGet();
+        if (progress != null) {
+          progress.fileDone(done, files.size(), bytes, totalBytes, System.nanoTime() - startNanos);
+        }
+      }
+      return edges;
+    }
+
+    int idOf(String word) {
+      Integer id = ids.get(word);
+      return id != null ? id : ids.computeIfAbsent(word, k -> nextId.getAndIncrement());
+    }
+
+    /**
+     * Merges the workers' counts into a graph whose nodes are sorted by word and whose edges are
+     * sorted by target within each node.
+     */
+    Result assemble(List<EdgeCounts> partials) {
+      int nodeCount = ids.size();
+      String[] byId = new String[nodeCount];
+      ids.forEach((word, id) -> byId[id] = word);
+      String[] words = byId.clone();
+      Arrays.sort(words);
+      Map<String, Integer> sortedIds = new HashMap<>(nodeCount * 4 / 3 + 1);
+      for (int i = 0; i < nodeCount; i++) {
+        sortedIds.put(words[i], i);
+      }
+      int[] rank = new int[nodeCount];
+      for (int id = 0; id < nodeCount; id++) {
+        rank[id] = sortedIds.get(byId[id]);
+      }
+
+      EdgeCounts edges = partials.isEmpty() ? new EdgeCounts() : partials.get(0);
+      for (EdgeCounts partial : partials) {
+        if (partial != edges) {
+          for (int slot = 0; slot < partial.capacity(); slot++) {
+            if (partial.key(slot) != EdgeCounts.EMPTY) {
+              edges.add(partial.key(slot), partial.count(slot));
+            }
+          }
+        }
+      }
+      int[] offsets = new int[nodeCount + 1];
+      for (int slot = 0; slot < edges.capacity(); slot++) {
+        if (edges.key(slot) != EdgeCounts.EMPTY) {
+          offsets[rank[(int) (edges.key(slot) >>> 32)] + 1]++;
+        }
+      }
+      for (int node = 0; node < nodeCount; node++) {
+        offsets[node + 1] += offsets[node];
+      }
+      // 按源节点分桶，桶内以 (目标 << 32 | 权重) 排序即按目标排序
+      long[] packed = new long[edges.size()];
+      int[] next = Arrays.copyOf(offsets, nodeCount);
+      for (int slot = 0; slot < edges.capacity(); slot++) {
+        long key = edges.key(slot);
+        if (key != EdgeCounts.EMPTY) {
+          int from = rank[(int) (key >>> 32)];
+          packed[next[from]++] = (long) rank[(int) key] << 32 | edges.count(slot);
+        }
+      }
+      int[] targets = new int[packed.length];
+      int[] weights = new int[packed.length];
+      for (int node = 0; node < nodeCount; node++) {
+        Arrays.sort(packed, offsets[node], offsets[node + 1]);
+      }
+      for (int e = 0; e < packed.length; e++) {
+        targets[e] = (int) (packed[e] >>> 32);
+        weights[e] = (int) packed[e];
+      }
+      CompactGraph graph = CompactGraph.of(words, offsets, targets, weights);
+      Provenance provenance = keepProvenance ? provenance(rank, offsets, targets) : null;
+      return new Result(graph, files, provenance);
+    }
+
+    private Provenance provenance(int[] rank, int[] offsets, int[] targets) {
+      // 先把每个文件的边换算成图中的边下标，再按边分桶
+      int[][] edgeIndices = new int[files.size()][];
+      int[] entryOffsets = new int[targets.length + 1];
+      for (int file = 0; file < files.size(); file++) {
+        long[] keys = fileEdges[file];
+        edgeIndices[file] = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+          int from = rank[(int) (keys[i] >>> 32)];
+          int e = Arrays.binarySearch(targets, offsets[from], offsets[from + 1],
+                  rank[(int) keys[i]]);
+          edgeIndices[file][i] = e;
+          entryOffsets[e + 1]++;
+        }
+      }
+      for (int e = 0; e < targets.length; e++) {
+        entryOffsets[e + 1] += entryOffsets[e];
+      }
+      int[] sources = new int[entryOffsets[targets.length]];
+      int[] counts = new int[sources.length];
+      int[] next = Arrays.copyOf(entryOffsets, targets.length);
+      for (int file = 0; file < files.size(); file++) {
+        for (int i = 0; i < edgeIndices[file].length; i++) {
+          int slot = next[edgeIndices[file][i]]++;
+          sources[slot] = file;
+          counts[slot] = fileCounts[file][i];
+        }
+      }
+      return new Provenance(entryOffsets, sources, counts);
+    }
+
+    /**
+     * Counts the edges of one file; words are interned into the shared dictionary.
+     */
+    private final class FileSink implements WordTokenizer.WordSink {
+      private final EdgeCounts counts;
+      private int previous = -1;
+
+      FileSink(EdgeCounts counts) {
+        this.counts = counts;
+      }
+
+      @Override
+      public void accept(String word) {
+        int id = idOf(word);
+        if (previous >= 0) {
+          counts.add(Main.Graph.edgeKey(previous, id), 1);
+        }
+        previous = id;
+      }
+    }
+  }
+
+  /**
+   * Open-addressing hash table from {@link Main.Graph#edgeKey} to a count, without boxing.
+   * Slots whose key is {@link #EMPTY} are unused.
+   */
+  private static final class EdgeCounts {
+    static final long EMPTY = -1L; // 源节点为 -1 的键不会出现
+
+    private long[] keys = emptyKeys(64);
+    private int[] counts = new int[64];
+    private int size;
+
+    int size() {
+      return size;
+    }
+
+    int capacity() {
+      return keys.length;
+    }
+
+    long key(int slot) {
+      return keys[slot];
+    }
+
+    int count(int slot) {
+      return counts[slot];
+    }
+
+    void add(long key, int count) {
+      int mask = keys.length - 1;
+      int slot = slotOf(key, mask);
+      for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          counts[slot] += count;
+          return;
+        }
+      }
+      keys[slot] = key;
+      counts[slot] = count;
+      // 装载因子保持在 0.5 以下
+      if (2 * ++size > keys.length) {
+        rehash();
+      }
+    }
+
+    private void rehash() {
+      long[] oldKeys = keys;
+      int[] oldCounts = counts;
+      keys = emptyKeys(oldKeys.length * 2);
+      counts = new int[oldKeys.length * 2];
+      int mask = keys.length - 1;
+      for (int old = 0; old < oldKeys.length; old++) {
+        if (oldKeys[old] != EMPTY) {
+          int slot = slotOf(oldKeys[old], mask);
+          while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[old];
+          counts[slot] = oldCounts[old];
+        }
+      }
+    }
+
+    private static long[] emptyKeys(int capacity) {
+      long[] keys = new long[capacity];
+      Arrays.fill(keys, EMPTY);
+      return keys;
+    }
+
+    private static int slotOf(long key, int mask) {
+      return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+  }
+}
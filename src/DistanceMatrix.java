@@ -0,0 +1,273 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Shortest-path distances from many sources, computed in parallel and streamed to a file.
+ *
+ * <p>All numbers are little-endian. The file is a 16-byte header, the source ids, then one row
+ * per source holding its distance to every node, with -1 for unreachable nodes:
+ *
+ * <pre>
+ * header: int magic, int format version, int node count, int row count
+ * body:   int[rowCount] source ids, int[rowCount][nodeCount] distances
+ * </pre>
+ *
+ * <p>Rows have a fixed size, so each fork-join worker runs Dijkstra for its sources and writes
+ * every row straight to its place in the file. Memory is one row buffer and one Dijkstra
+ * workspace per busy worker however many rows are written, and the workers never wait for each
+ * other. The buffers are pooled for one call to {@code write} and dropped when it returns.
+ */
+final class DistanceMatrix implements Closeable {
+
+  static final int UNREACHABLE = -1;
+
+  private static final int MAGIC = 0x57445354; // "WDST"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  private final FileChannel channel;
+  private final int nodeCount;
+  private final int[] sources;
+
+  private DistanceMatrix(FileChannel channel, int nodeCount, int[] sources) {
+    this.channel = channel;
+    this.nodeCount = nodeCount;
+    this.sources = sources;
+  }
+
+  /**
+   * Writes the distances from every node of {@code graph}, so row {@code i} is node {@code i}.
+   */
+  static void write(CompactGraph graph, Path file) throws IOException {
+    int[] sources = IntStream.range(0, graph.nodeCount()).toArray();
+    write(graph, sources, file, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Writes one row for each of {@code sources}, in that order, computing rows on {@code pool}.
+   */
+  static void write(CompactGraph graph, int[] sources, Path file, ForkJoinPool pool)
+          throws IOException {
+    int nodeCount = graph.nodeCount();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES * sources.length)
+              .order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(nodeCount).putInt(sources.length);
+      for (int source : sources) {
+        header.putInt(source);
+      }
+      writeFully(channel, header.flip(), 0);
+      ConcurrentLinkedQueue<RowWorker> workers = new ConcurrentLinkedQueue<>();
+      try {
+        pool.invoke(new RowTask(graph, sources, channel, workers, 0, sources.length));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      } finally {
+        // 不保留任何工作者，直接内存随之回收
+        workers.clear();
+      }
+    }
+  }
+
+  /**
+   * Opens a file written by {@link #write} for reading; rows are read on demand.
+   */
+  static DistanceMatrix open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, header, 0);
+      if (header.flip().getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+        throw new IOException("Not a distance matrix file: " + file);
+      }
+      int nodeCount = header.getInt();
+      int rowCount = header.getInt();
+      if (nodeCount < 0 || rowCount < 0 || channel.size() != HEADER_SIZE
+              + Integer.BYTES * ((long) rowCount + (long) rowCount * nodeCount)) {
+        throw new IOException("Truncated or corrupt distance matrix file: " + file);
+      }
+      ByteBuffer ids = ByteBuffer.allocate(Integer.BYTES * rowCount)
+              .order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, ids, HEADER_SIZE);
+      int[] sources = new int[rowCount];
+      ids.flip().asIntBuffer().get(sources);
+      return new DistanceMatrix(channel, nodeCount, sources);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  int nodeCount() {
+    return nodeCount;
+  }
+
+  int rowCount() {
+    return sources.length;
+  }
+
+  /**
+   * Returns the source node of row {@code row}.
+   */
+  int source(int row) {
+    return sources[row];
+  }
+
+  /**
+   * Reads the distances of row {@code row}, indexed by target node.
+   */
+  int[] row(int row) throws IOException {
+    ByteBuffer bytes =
+            ByteBuffer.allocate(Integer.BYTES * nodeCount).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, bytes, rowPosition(row));
+    int[] distances = new int[nodeCount];
+    bytes.flip().asIntBuffer().get(distances);
+    return distances;
+  }
+
+  int distance(int row, int target) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, bytes, rowPosition(row) + (long) Integer.BYTES * target);
+    return bytes.getInt(0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private long rowPosition(int row) {
+    return rowPosition(sources.length, nodeCount, row);
+  }
+
+  private static long rowPosition(int rowCount, int nodeCount, int row) {
+    return HEADER_SIZE + Integer.BYTES * ((long) rowCount + (long) row * nodeCount);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+          throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+          throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        throw new IOException("Unexpected end of distance matrix file");
+      }
+      position += n;
+    }
+  }
+
+  /**
+   * Computes and writes the rows {@code lo} to {@code hi - 1}, splitting the range in halves.
+   */
+  private static final class RowTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final CompactGraph graph;
+    private final int[] sources;
+    private final FileChannel channel;
+    private final ConcurrentLinkedQueue<RowWorker> workers;
+    private final int lo;
+    private final int hi;
+
+    RowTask(CompactGraph graph, int[] sources, FileChannel channel,
+            ConcurrentLinkedQueue<RowWorker> workers, int lo, int hi) {
+      this.graph = graph;
+      this.sources = sources;
+      this.channel = channel;
+      this.workers = workers;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= 1) {
+        RowWorker worker = workers.poll();
+        if (worker == null) {
+          worker = new RowWorker(graph.nodeCount());
+        }
+        try {
+          for (int row = lo; row < hi; row++) {
+            worker.writeRow(graph, sources[row], channel,
+                    rowPosition(sources.length, graph.nodeCount(), row));
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } finally {
+          workers.offer(worker);
+        }
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new RowTask(graph, sources, channel, workers, lo, mid),
+              new RowTask(graph, sources, channel, workers, mid, hi));
+    }
+  }
+
+  /**
+   * Dijkstra state and a row buffer, reused for every row computed while it is taken from the
+   * pool.
+   */
+  private static final class RowWorker {
+    private final int[] distances;
+    private final IndexedMinHeap queue;
+    private final ByteBuffer row;
+
+    RowWorker(int nodeCount) {
+      distances = new int[nodeCount];
+      queue = new IndexedMinHeap(nodeCount);
+      row = ByteBuffer.allocateDirect(Integer.BYTES * nodeCount).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void writeRow(CompactGraph graph, int source, FileChannel channel, long position)
+            throws IOException {
+      long start = Metrics.start();
+      Arrays.fill(distances, Integer.MAX_VALUE);
+      distances[source] = 0;
+      queue.insertOrDecrease(source, 0);
+      long nodesSettled = 0;
+      long edgesRelaxed = 0;
+      // 权重均为正，已出队节点的距离不会再被更新，无需单独记录
+      while (!queue.isEmpty()) {
+        int node = queue.poll();
+        nodesSettled++;
+        edgesRelaxed += graph.outDegree(node);
+        for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+          int neighbor = graph.target(e);
+          int newDist = distances[node] + graph.weight(e);
+          if (newDist < distances[neighbor]) {
+            distances[neighbor] = newDist;
+            queue.insertOrDecrease(neighbor, newDist);
+          }
+        }
+      }
+      Metrics.dijkstra(nodesSettled, edgesRelaxed);
+      Metrics.record(Metrics.Operation.DIJKSTRA, start);
+
+      IntBuffer ints = row.clear().asIntBuffer();
+      for (int distance : distances) {
+        ints.put(distance == Integer.MAX_VALUE ? UNREACHABLE : distance);
+      }
+      writeFully(channel, row, position);
+    }
+  }
+}
@@ -0,0 +1,278 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Streams a {@link CompactGraph} as Graphviz DOT text straight to a {@link Writer}, and renders
+ * DOT files to images without blocking the caller.
+ *
+ * <p>The text has the same layout as {@link Main.Graph#generateDotGraph}. {@link Options} can
+ * limit it to the heaviest edges or to the neighbourhood of a highlighted path, so that graphs
+ * too large for Graphviz can still be drawn in part.
+ */
+final class DotWriter {
+
+  /**
+   * Which edges to write and which to highlight. Instances are immutable; each method returns a
+   * modified copy.
+   */
+  static final class Options {
+    private final int maxEdges;
+    private final List<String> highlightPath;
+    private final int neighborhoodHops;
+
+    private Options(int maxEdges, List<String> highlightPath, int neighborhoodHops) {
+      this.maxEdges = maxEdges;
+      this.highlightPath = highlightPath;
+      this.neighborhoodHops = neighborhoodHops;
+    }
+
+    /**
+     * Writes every edge with nothing highlighted.
+     */
+    static Options all() {
+      return new Options(Integer.MAX_VALUE, Collections.emptyList(), -1);
+    }
+
+    /**
+     * Keeps only the {@code k} heaviest edges, plus the highlighted path.
+     */
+    Options topEdges(int k) {
+      return new Options(k, highlightPath, neighborhoodHops);
+    }
+
+    /**
+     * Draws the edges between consecutive words of {@code path} in red.
+     */
+    Options highlight(List<String> path) {
+      return new Options(maxEdges, path, neighborhoodHops);
+    }
+
+    /**
+     * Keeps only edges whose ends are both within {@code hops} edges, in either direction, of a
+     * word on the highlighted path.
+     */
+    Options neighborhood(int hops) {
+      return new Options(maxEdges, highlightPath, hops);
+    }
+  }
+
+  private static final Set<String> KEYWORDS =
+          Set.of("node", "edge", "graph", "digraph", "subgraph", "strict");
+  private static final int CHECK_INTERVAL = 1024;
+
+  private DotWriter() {
+  }
+
+  /**
+   * Writes the DOT text of {@code graph} to {@code file} through a buffered writer.
+   */
+  static void write(CompactGraph graph, Options options, Path file) throws IOException {
+    write(graph, options, file, Cancellation.NONE);
+  }
+
+  /**
+   * Like {@link #write(CompactGraph, Options, Path)}, checking {@code cancellation} as it goes.
+   * A cancelled write leaves a partial file behind.
+   */
+  static void write(CompactGraph graph, Options options, Path file, Cancellation cancellation)
+          throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      write(graph, options, out, cancellation);
+    }
+  }
+
+  /**
+   * Writes the DOT text of {@code graph} to {@code out} edge by edge. The writer is not closed.
+   */
+  static void write(CompactGraph graph, Options options, Writer out) throws IOException {
+    write(graph, options, out, Cancellation.NONE);
+  }
+
+  /**
+   * Like {@link #write(CompactGraph, Options, Writer)}, checking {@code cancellation} every
+   * {@link #CHECK_INTERVAL} nodes.
+   */
+  static void write(CompactGraph graph, Options options, Writer out, Cancellation cancellation)
+          throws IOException {
+    // 最重的边按边编号标记，需要连续的编号
+    writeDense(graph.dense(), options, out, cancellation);
+  }
+
+  private static void writeDense(CompactGraph graph, Options options, Writer out,
+                                 Cancellation cancellation) throws IOException {
+    long start = Metrics.start();
+    Set<Long> pathEdges = new HashSet<>();
+    int[] pathNodes = new int[options.highlightPath.size()];
+    int pathLength = 0;
+    for (String word : options.highlightPath) {
+      int node = graph.idOf(word);
+      if (node >= 0) {
+        if (pathLength > 0) {
+          pathEdges.add(Main.Graph.edgeKey(pathNodes[pathLength - 1], node));
+        }
+        pathNodes[pathLength++] = node;
+      }
+    }
+    boolean[] inNeighborhood = options.neighborhoodHops < 0 ? null
+            : neighborhood(graph, Arrays.copyOf(pathNodes, pathLength), options.neighborhoodHops);
+    boolean[] heavy = options.maxEdges >= graph.edgeCount() ? null
+            : heaviestEdges(graph, options.maxEdges);
+
+    out.write("digraph G {\n");
+    for (int node = 0; node < graph.nodeCount(); node++) {
+      if (node % CHECK_INTERVAL == 0) {
+        cancellation.check();
+      }
+      if (inNeighborhood != null && !inNeighborhood[node]) {
+        continue;
+      }
+      for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+        int neighbor = graph.target(e);
+        boolean onPath = pathEdges.contains(Main.Graph.edgeKey(node, neighbor));
+        if (inNeighborhood != null && !inNeighborhood[neighbor]
+                || heavy != null && !heavy[e] && !onPath) {
+          continue;
+        }
+        writeId(graph.word(node), out);
+        out.write(" -> ");
+        writeId(graph.word(neighbor), out);
+        out.write(" [label=");
+        out.write(Integer.toString(graph.weight(e)));
+        if (onPath) {
+          out.write(", color=red, penwidth=2.0");
+        }
+        out.write("];\n");
+      }
+    }
+    out.write("}");
+    Metrics.record(Metrics.Operation.WRITE_DOT, start);
+  }
+
+  /**
+   * Starts Graphviz to render {@code dotFile} as a PNG image and returns at once. The future
+   * completes with {@code imageFile} when {@code dot} succeeds, and exceptionally if it cannot
+   * be started or exits with an error. Cancelling the future or completing it exceptionally,
+   * e.g. with {@link CompletableFuture#orTimeout}, kills {@code dot}.
+   */
+  static CompletableFuture<Path> renderAsync(Path dotFile, Path imageFile) {
+    Process process;
+    try {
+      process = new ProcessBuilder("dot", "-Tpng", "-o", imageFile.toString(), dotFile.toString())
+              .redirectErrorStream(true)
+              .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+              .start();
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    CompletableFuture<Path> image = process.onExit().thenApply(p -> {
+      if (p.exitValue() != 0) {
+        throw new IllegalStateException("dot exited with status " + p.exitValue());
+      }
+      return imageFile;
+    });
+    image.whenComplete((path, e) -> {
+      if (e != null) {
+        process.destroy(); // 已退出的进程不受影响
+      }
+    });
+    return image;
+  }
+
+  /**
+   * Marks the nodes within {@code hops} undirected steps of any node in {@code start}.
+   */
+  private static boolean[] neighborhood(CompactGraph graph, int[] start, int hops) {
+    boolean[] reached = new boolean[graph.nodeCount()];
+    int[] frontier = start.clone();
+    int frontierSize = frontier.length;
+    for (int node : start) {
+      reached[node] = true;
+    }
+    for (int hop = 0; hop < hops && frontierSize > 0; hop++) {
+      int[] next = new int[graph.nodeCount()];
+      int nextSize = 0;
+      for (int i = 0; i < frontierSize; i++) {
+        int node = frontier[i];
+        for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+          int neighbor = graph.target(e);
+          if (!reached[neighbor]) {
+            reached[neighbor] = true;
+            next[nextSize++] = neighbor;
+          }
+        }
+        for (int r = graph.reverseEdgeStart(node); r < graph.reverseEdgeEnd(node); r++) {
+          int neighbor = graph.reverseSource(r);
+          if (!reached[neighbor]) {
+            reached[neighbor] = true;
+            next[nextSize++] = neighbor;
+          }
+        }
+      }
+      frontier = next;
+      frontierSize = nextSize;
+    }
+    return reached;
+  }
+
+  /**
+   * Marks the {@code k} edges with the largest weights, keeping a bounded min-heap of
+   * {@code (weight << 32 | edge)} values.
+   */
+  private static boolean[] heaviestEdges(CompactGraph graph, int k) {
+    PriorityQueue<Long> heaviest = new PriorityQueue<>();
+    for (int e = 0; e < graph.edgeCount() && k > 0; e++) {
+      long entry = ((long) graph.weight(e) << 32) | e;
+      if (heaviest.size() < k) {
+        heaviest.add(entry);
+      } else if (entry > heaviest.peek()) {
+        heaviest.poll();
+        heaviest.add(entry);
+      }
+    }
+    boolean[] selected = new boolean[graph.edgeCount()];
+    for (long entry : heaviest) {
+      selected[(int) entry] = true;
+    }
+    return selected;
+  }
+
+  /**
+   * Writes {@code word} as a DOT identifier, quoting it only when it is not a plain identifier.
+   */
+  private static void writeId(String word, Writer out) throws IOException {
+    if (isPlainId(word)) {
+      out.write(word);
+      return;
+    }
+    out.write('"');
+    out.write(word.replace("\\", "\\\\").replace("\"", "\\\""));
+    out.write('"');
+  }
+
+  private static boolean isPlainId(String word) {
+    if (word.isEmpty() || Character.isDigit(word.charAt(0))
+            || KEYWORDS.contains(word.toLowerCase(Locale.ROOT))) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      char c = word.charAt(i);
+      if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_'
+              || c >= '\u0080')) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
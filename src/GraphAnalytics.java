@@ -0,0 +1,376 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Word-importance rankings of a {@link CompactGraph}: weighted PageRank, weighted in- and
+ * out-degree, word frequencies and the heaviest edges.
+ *
+ * <p>PageRank follows each edge with probability proportional to its weight, jumps to a random
+ * word with probability {@code 1 - DAMPING}, and spreads the rank of words without outgoing
+ * edges evenly over all words. Every iteration pulls the rank of each word from its incoming
+ * edges through the reverse index, so fork-join workers fill disjoint ranges of plain
+ * {@code double[]} arrays without sharing any writes, and iteration stops as soon as the ranks
+ * change by less than {@link #TOLERANCE} in total. Partial sums are added in range order, so the
+ * ranks do not depend on the number of workers. While it runs, PageRank copies the edge weights
+ * into reverse-index order in the heap, also for an off-heap graph.
+ *
+ * <p>Top-k lists are kept once computed, so asking again for the same or a smaller k only copies
+ * the cached list. {@link CompactGraph#analytics()} keeps one instance per graph.
+ */
+final class GraphAnalytics {
+
+  static final double DAMPING = 0.85;
+  static final double TOLERANCE = 1e-9;
+  static final int MAX_ITERATIONS = 100;
+
+  private static final int NODES_PER_TASK = 1 << 12;
+
+  private final CompactGraph graph;
+  private final long[] inWeights;
+  private final long[] outWeights;
+  private final double[] ranks;
+  private final int iterations;
+  private final boolean converged;
+  private final TopK byRank;
+  private final TopK byFrequency;
+  private final TopK byWeight;
+
+  private GraphAnalytics(CompactGraph graph, ForkJoinPool pool) {
+    this.graph = graph;
+    int nodeCount = graph.nodeCount();
+    inWeights = new long[nodeCount];
+    outWeights = new long[nodeCount];
+    for (int node = 0; node < nodeCount; node++) {
+      for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+        outWeights[node] += graph.weight(e);
+        inWeights[graph.target(e)] += graph.weight(e);
+      }
+    }
+    PageRank pageRank = new PageRank(graph, outWeights);
+    pageRank.run(pool);
+    ranks = pageRank.ranks;
+    iterations = pageRank.iterations;
+    converged = pageRank.converged;
+    byRank = new TopK(nodeCount, node -> ranks[node]);
+    byFrequency = new TopK(nodeCount, this::frequency);
+    byWeight = new TopK(graph.edgeCount(), graph::weight);
+  }
+
+  /**
+   * Computes the analytics of {@code graph} on the common fork-join pool.
+   */
+  static GraphAnalytics compute(CompactGraph graph) {
+    return compute(graph, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Computes the analytics of {@code graph}, running the PageRank iterations on {@code pool}.
+   * Edge indices refer to {@link CompactGraph#dense}.
+   */
+  static GraphAnalytics compute(CompactGraph graph, ForkJoinPool pool) {
+    long start = Metrics.start();
+    GraphAnalytics analytics = new GraphAnalytics(graph.dense(), pool);
+    Metrics.record(Metrics.Operation.PAGE_RANK, start);
+    return analytics;
+  }
+
+  CompactGraph graph() {
+    return graph;
+  }
+
+  /**
+   * Returns the PageRank of {@code node}; the ranks of all nodes add up to 1.
+   */
+  double pageRank(int node) {
+    return ranks[node];
+  }
+
+  /**
+   * Returns the number of PageRank iterations that were run.
+   */
+  int iterations() {
+    return iterations;
+  }
+
+  /**
+   * Returns whether PageRank reached {@link #TOLERANCE} within {@link #MAX_ITERATIONS}.
+   */
+  boolean converged() {
+    return converged;
+  }
+
+  /**
+   * Returns the total weight of the edges pointing to {@code node}.
+   */
+  long inWeight(int node) {
+    return inWeights[node];
+  }
+
+  /**
+   * Returns the total weight of the edges leaving {@code node}.
+   */
+  long outWeight(int node) {
+    return outWeights[node];
+  }
+
+  /**
+   * Returns how often the word of {@code node} occurs in the text. Every occurrence but the first
+   * word of the text has one incoming edge and every one but the last has one outgoing edge, so
+   * this is the larger of the in- and out-weight; it is one short only for a word that both
+   * starts and ends the text.
+   */
+  long frequency(int node) {
+    return Math.max(inWeights[node], outWeights[node]);
+  }
+
+  /**
+   * Returns the {@code k} nodes with the highest PageRank, highest first.
+   */
+  int[] topByPageRank(int k) {
+    return byRank.top(k);
+  }
+
+  /**
+   * Returns the {@code k} most frequent nodes, most frequent first.
+   */
+  int[] topByFrequency(int k) {
+    return byFrequency.top(k);
+  }
+
+  /**
+   * Returns the {@code k} edge indices with the largest weights, heaviest first.
+   */
+  int[] topEdges(int k) {
+    return byWeight.top(k);
+  }
+
+  /**
+   * Rough retained heap size in bytes, including the top-k lists computed so far.
+   */
+  long estimatedBytes() {
+    return 24L * ranks.length + byRank.estimatedBytes() + byFrequency.estimatedBytes()
+            + byWeight.estimatedBytes();
+  }
+
+  /**
+   * Power iteration state. Besides its rank, each node keeps its rank divided by its out-weight,
+   * the share it passes along every unit of edge weight; both are double-buffered.
+   */
+  private static final class PageRank {
+    final CompactGraph graph;
+    final double[] inverseOutWeights;
+    final int[] reverseWeights; // 按反向边顺序存放的权重，迭代时顺序读取
+    final int taskCount;
+    final double[] deltas; // 每个任务的 L1 变化量
+    final double[] danglingRanks; // 每个任务中无出边节点的排名之和
+    double[] ranks;
+    double[] nextRanks;
+    double[] shares;
+    double[] nextShares;
+    double danglingRank;
+    int iterations;
+    boolean converged;
+
+    PageRank(CompactGraph graph, long[] outWeights) {
+      this.graph = graph;
+      int nodeCount = graph.nodeCount();
+      inverseOutWeights = new double[nodeCount];
+      ranks = new double[nodeCount];
+      nextRanks = new double[nodeCount];
+      shares = new double[nodeCount];
+      nextShares = new double[nodeCount];
+      taskCount = (nodeCount + NODES_PER_TASK - 1) / NODES_PER_TASK;
+      deltas = new double[taskCount];
+      danglingRanks = new double[taskCount];
+      reverseWeights = new int[graph.edgeCount()];
+      for (int r = 0; r < reverseWeights.length; r++) {
+        reverseWeights[r] = graph.reverseWeight(r);
+      }
+      for (int node = 0; node < nodeCount; node++) {
+        inverseOutWeights[node] = outWeights[node] == 0 ? 0 : 1.0 / outWeights[node];
+        ranks[node] = 1.0 / nodeCount;
+        shares[node] = ranks[node] * inverseOutWeights[node];
+        if (outWeights[node] == 0) {
+          danglingRank += ranks[node];
+        }
+      }
+    }
+
+    void run(ForkJoinPool pool) {
+      int nodeCount = graph.nodeCount();
+      if (nodeCount == 0) {
+        converged = true;
+        return;
+      }
+      while (iterations < MAX_ITERATIONS && !converged) {
+        double base = (1 - DAMPING + DAMPING * danglingRank) / nodeCount;
+        pool.invoke(new Step(this, base, 0, taskCount));
+        double delta = 0;
+        danglingRank = 0;
+        for (int task = 0; task < taskCount; task++) {
+          delta += deltas[task];
+          danglingRank += danglingRanks[task];
+        }
+        double[] swap = ranks;
+        ranks = nextRanks;
+        nextRanks = swap;
+        swap = shares;
+        shares = nextShares;
+        nextShares = swap;
+        iterations++;
+        converged = delta < TOLERANCE;
+      }
+    }
+
+    /**
+     * Computes the next ranks of the nodes of task {@code task}.
+     */
+    void update(int task, double base) {
+      int lo = task * NODES_PER_TASK;
+      int hi = Math.min(graph.nodeCount(), lo + NODES_PER_TASK);
+      double delta = 0;
+      double dangling = 0;
+      for (int node = lo; node < hi; node++) {
+        double incoming = 0;
+        for (int r = graph.reverseEdgeStart(node); r < graph.reverseEdgeEnd(node); r++) {
+          incoming += shares[graph.reverseSource(r)] * reverseWeights[r];
+        }
+        double rank = base + DAMPING * incoming;
+        nextRanks[node] = rank;
+        nextShares[node] = rank * inverseOutWeights[node];
+        delta += Math.abs(rank - ranks[node]);
+        if (inverseOutWeights[node] == 0) {
+          dangling += rank;
+        }
+      }
+      deltas[task] = delta;
+      danglingRanks[task] = dangling;
+    }
+  }
+
+  /**
+   * Runs {@link PageRank#update} for tasks {@code lo} to {@code hi - 1}, splitting in halves.
+   */
+  private static final class Step extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final PageRank pageRank;
+    private final double base;
+    private final int lo;
+    private final int hi;
+
+    Step(PageRank pageRank, double base, int lo, int hi) {
+      this.pageRank = pageRank;
+      this.base = base;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= 1) {
+        for (int task = lo; task < hi; task++) {
+          pageRank.update(task, base);
+        }
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new Step(pageRank, base, lo, mid), new Step(pageRank, base, mid, hi));
+    }
+  }
+
+  /**
+   * The highest-scoring of {@code count} items, ties broken by the lower index. The longest list
+   * computed so far is kept, and every shorter request is served from it.
+   */
+  private static final class TopK {
+    private final int count;
+    private final IntToDoubleFunction score;
+    private volatile int[] top = new int[0];
+
+    TopK(int count, IntToDoubleFunction score) {
+      this.count = count;
+      this.score = score;
+    }
+
+    int[] top(int k) {
+      k = Math.max(0, Math.min(k, count));
+      int[] cached = top;
+      if (cached.length < k) {
+        // 并发首次访问时可能重复计算，但结果相同
+        cached = select(k);
+        top = cached;
+      }
+      int[] result = new int[k];
+      System.arraycopy(cached, 0, result, 0, k);
+      return result;
+    }
+
+    long estimatedBytes() {
+      return 16L + 4L * top.length;
+    }
+
+    /**
+     * Keeps the best {@code k} items seen so far in a binary min-heap whose root is the worst of
+     * them, then empties the heap from the back of the result.
+     */
+    private int[] select(int k) {
+      int[] heap = new int[k];
+      int size = 0;
+      for (int item = 0; item < count && k > 0; item++) {
+        if (size < k) {
+          heap[size] = item;
+          siftUp(heap, size++);
+        } else if (better(item, heap[0])) {
+          heap[0] = item;
+          siftDown(heap, size);
+        }
+      }
+      int[] result = new int[size];
+      while (size > 0) {
+        result[--size] = heap[0];
+        heap[0] = heap[size];
+        siftDown(heap, size);
+      }
+      return result;
+    }
+
+    private boolean better(int a, int b) {
+      double scoreA = score.applyAsDouble(a);
+      double scoreB = score.applyAsDouble(b);
+      return scoreA > scoreB || (scoreA == scoreB && a < b);
+    }
+
+    private void siftUp(int[] heap, int i) {
+      int item = heap[i];
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!better(heap[parent], item)) {
+          break;
+        }
+        heap[i] = heap[parent];
+        i = parent;
+      }
+      heap[i] = item;
+    }
+
+    private void siftDown(int[] heap, int size) {
+      if (size == 0) {
+        return;
+      }
+      int item = heap[0];
+      int i = 0;
+      for (int child; (child = 2 * i + 1) < size; i = child) {
+        if (child + 1 < size && better(heap[child], heap[child + 1])) {
+          child++;
+        }
+        if (!better(item, heap[child])) {
+          break;
+        }
+        heap[i] = heap[child];
+      }
+      heap[i] = item;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the word graph one word at a time.
+ *
+ * <p>Each accepted word becomes a node and, if a word was accepted before it, the edge from the
+ * previous word is incremented. Only the previous word is remembered, so memory is bounded by
+ * the number of distinct words and edges rather than by the length of the input.
+ */
+final class GraphBuilder implements WordTokenizer.WordSink {
+
+  private final Map<String, Map<String, Integer>> graph;
+  private String previousWord;
+  private Map<String, Integer> previousNeighbors;
+
+  GraphBuilder() {
+    this(new HashMap<>());
+  }
+
+  GraphBuilder(Map<String, Map<String, Integer>> graph) {
+    this.graph = graph;
+  }
+
+  @Override
+  public void accept(String word) {
+    Map<String, Integer> neighbors = graph.get(word);
+    if (neighbors == null) {
+      neighbors = new HashMap<>();
+      graph.put(word, neighbors);
+    }
+    if (previousNeighbors != null) {
+      previousNeighbors.merge(word, 1, Integer::sum);
+    }
+    previousWord = word;
+    previousNeighbors = neighbors;
+  }
+
+  /**
+   * Returns the last accepted word, or null if no word was accepted yet.
+   */
+  String previousWord() {
+    return previousWord;
+  }
+
+  Map<String, Map<String, Integer>> graph() {
+    return graph;
+  }
+}
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary on-disk format for a {@link CompactGraph}, so a graph can be loaded at startup
+ * without tokenizing the original text again.
+ *
+ * <p>All numbers are little-endian. The file is a 40-byte header followed by the body:
+ *
+ * <pre>
+ * header: int magic, int format version, int node count, int edge count,
+ *         long dictionary size in bytes, long CRC32C of the body, int word slot count, int 0
+ * body:   int[nodeCount + 1] word start offsets into the dictionary
+ *         byte[dictionary size] UTF-8 words, zero-padded to a multiple of 4 bytes
+ *         int[nodeCount] word hash codes, int[word slot count] word lookup table
+ *         int[nodeCount + 1] edge offsets, int[edgeCount] targets, int[edgeCount] weights
+ * </pre>
+ *
+ * <p>The word tables are those of {@link OffHeapWords}, so loading only memory-maps the file and
+ * wraps its sections: nothing is decoded, hashed or copied, and the pages are read on first
+ * use. The loaded graph is an off-heap graph backed by the file. An off-heap load copies the
+ * sections into direct memory instead, so the graph no longer depends on the file. The checksum
+ * is only verified on request, since that reads the whole file up front.
+ */
+final class GraphFile {
+
+  static final String EXTENSION = ".wgraph";
+
+  private static final int MAGIC = 0x57475246; // "WGRF"
+  private static final int FORMAT_VERSION = 2;
+  private static final int HEADER_SIZE = 40;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private GraphFile() {
+  }
+
+  /**
+   * Writes {@code graph} to {@code file}, replacing any existing content.
+   */
+  static void save(CompactGraph graph, Path file) throws IOException {
+    saveDense(graph.dense(), file); // 文件中的边按节点连续存放
+  }
+
+  private static void saveDense(CompactGraph graph, Path file) throws IOException {
+    int nodeCount = graph.nodeCount();
+    byte[][] encoded = new byte[nodeCount][];
+    int[] hashes = new int[nodeCount];
+    int[] slots = new int[OffHeapWords.tableSize(nodeCount)];
+    long dictionarySize = 0;
+    for (int node = 0; node < nodeCount; node++) {
+      String word = graph.word(node);
+      encoded[node] = word.getBytes(StandardCharsets.UTF_8);
+      dictionarySize += encoded[node].length;
+      hashes[node] = word.hashCode();
+      int slot = OffHeapWords.slot(hashes[node], slots.length);
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & (slots.length - 1);
+      }
+      slots[slot] = node + 1;
+    }
+    if (dictionarySize > Integer.MAX_VALUE) {
+      throw new IOException("Word dictionary too large: " + dictionarySize + " bytes");
+    }
+    if (graph.edgeCount() > CompactGraph.MAX_DIRECT_INTS) {
+      throw new IOException("Too many edges for a graph file: " + graph.edgeCount());
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      BodyWriter body = new BodyWriter(channel);
+      int wordOffset = 0;
+      for (int node = 0; node < nodeCount; node++) {
+        body.putInt(wordOffset);
+        wordOffset += encoded[node].length;
+      }
+      body.putInt(wordOffset);
+      for (byte[] word : encoded) {
+        body.put(word);
+      }
+      for (long i = dictionarySize; i % Integer.BYTES != 0; i++) {
+        body.put(new byte[] {0});
+      }
+      for (int hash : hashes) {
+        body.putInt(hash);
+      }
+      for (int slot : slots) {
+        body.putInt(slot);
+      }
+      for (int node = 0; node < nodeCount; node++) {
+        body.putInt(graph.edgeStart(node));
+      }
+      body.putInt(graph.edgeCount());
+      for (int e = 0; e < graph.edgeCount(); e++) {
+        body.putInt(graph.target(e));
+      }
+      for (int e = 0; e < graph.edgeCount(); e++) {
+        body.putInt(graph.weight(e));
+      }
+      body.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(nodeCount).putInt(graph.edgeCount())
+              .putLong(dictionarySize).putLong(body.checksum.getValue())
+              .putInt(slots.length).putInt(0).flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+    }
+  }
+
+  /**
+   * Loads a graph written by {@link #save} without verifying its checksum.
+   */
+  static CompactGraph load(Path file) throws IOException {
+    return load(file, false);
+  }
+
+  /**
+   * Loads a graph written by {@link #save}; verifying the checksum reads the whole file once.
+   */
+  static CompactGraph load(Path file, boolean verifyChecksum) throws IOException {
+    return load(file, verifyChecksum, false);
+  }
+
+  /**
+   * Loads a graph written by {@link #save}, copying it into direct memory if {@code offHeap} is
+   * set and otherwise wrapping the mapped file.
+   */
+  static CompactGraph load(Path file, boolean verifyChecksum, boolean offHeap)
+          throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Not a graph file: " + file);
+      }
+      ByteBuffer header = map(channel, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a graph file: " + file);
+      }
+      int version = header.getInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported graph file version " + version + ": " + file);
+      }
+      int nodeCount = header.getInt();
+      int edgeCount = header.getInt();
+      long dictionarySize = header.getLong();
+      long checksum = header.getLong();
+      int slotCount = header.getInt();
+      long paddedDictionary = (dictionarySize + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+      long bodySize = Integer.BYTES * (3L * nodeCount + 2 + slotCount + 2L * edgeCount)
+              + paddedDictionary;
+      if (nodeCount < 0 || edgeCount < 0 || Integer.bitCount(slotCount) != 1
+              || slotCount <= nodeCount || channel.size() != HEADER_SIZE + bodySize) {
+        throw new IOException("Truncated or corrupt graph file: " + file);
+      }
+      if (verifyChecksum) {
+        CRC32C crc = new CRC32C();
+        for (long pos = HEADER_SIZE; pos < channel.size(); pos += Integer.MAX_VALUE) {
+          crc.update(map(channel, pos, Math.min(Integer.MAX_VALUE, channel.size() - pos)));
+        }
+        if (crc.getValue() != checksum) {
+          throw new IOException("Checksum mismatch in graph file: " + file);
+        }
+      }
+
+      long pos = HEADER_SIZE;
+      IntBuffer wordStarts = ints(channel, pos, nodeCount + 1, offHeap);
+      pos += Integer.BYTES * (nodeCount + 1L);
+      ByteBuffer dictionary = map(channel, pos, dictionarySize);
+      if (offHeap) {
+        dictionary = CompactGraph.directBytes(dictionarySize).put(0, dictionary, 0,
+                (int) dictionarySize);
+      }
+      pos += paddedDictionary;
+      IntBuffer hashes = ints(channel, pos, nodeCount, offHeap);
+      pos += Integer.BYTES * (long) nodeCount;
+      IntBuffer slots = ints(channel, pos, slotCount, offHeap);
+      pos += Integer.BYTES * (long) slotCount;
+      IntBuffer offsets = ints(channel, pos, nodeCount + 1, offHeap);
+      pos += Integer.BYTES * (nodeCount + 1L);
+      IntBuffer targets = ints(channel, pos, edgeCount, offHeap);
+      pos += Integer.BYTES * (long) edgeCount;
+      IntBuffer weights = ints(channel, pos, edgeCount, offHeap);
+      OffHeapWords words = new OffHeapWords(dictionary, wordStarts, hashes, slots, nodeCount);
+      return CompactGraph.offHeap(words, offsets, targets, weights);
+    }
+  }
+
+  /**
+   * Returns {@code count} ints at {@code pos}, mapped or, if {@code copy} is set, copied into
+   * direct memory.
+   */
+  private static IntBuffer ints(FileChannel channel, long pos, int count, boolean copy)
+          throws IOException {
+    if (count > CompactGraph.MAX_DIRECT_INTS) {
+      // 单次映射不能超过 2GB
+      throw new IOException("Graph file section too large: " + count + " ints");
+    }
+    IntBuffer mapped = map(channel, pos, (long) count * Integer.BYTES).asIntBuffer();
+    if (!copy) {
+      return mapped;
+    }
+    return CompactGraph.directInts(count).put(0, mapped, 0, count);
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long pos, long size)
+          throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  /**
+   * Buffers the body after the header and computes its checksum on the way out.
+   */
+  private static final class BodyWriter {
+    final CRC32C checksum = new CRC32C();
+    private final FileChannel channel;
+    private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long position = HEADER_SIZE;
+
+    BodyWriter(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    void putInt(int value) throws IOException {
+      if (buffer.remaining() < Integer.BYTES) {
+        flush();
+      }
+      buffer.putInt(value);
+    }
+
+    void put(byte[] bytes) throws IOException {
+      int done = 0;
+      while (done < bytes.length) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        int n = Math.min(buffer.remaining(), bytes.length - done);
+        buffer.put(bytes, done, n);
+        done += n;
+      }
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      checksum.update(buffer.duplicate());
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+      buffer.clear();
+    }
+  }
+}
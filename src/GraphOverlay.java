@@ -0,0 +1,629 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Words and edges added to a {@link CompactGraph} after it was built, so that {@link LiveGraph}
+ * can publish a new graph per append without rebuilding the CSR.
+ *
+ * <p>When an append touches a node, by adding an edge or raising a weight, the node's whole row
+ * is copied to the end of a shared edge log with the change applied; rows of new words are
+ * written there too. A table of row bounds, split into pages of {@link #PAGE_SIZE} nodes that are
+ * copied on write, points every node either at its row in the base graph or at its latest copy,
+ * whose edge indices start at {@code base.edgeCount()}. A row copy keeps the order of the row it
+ * replaces and puts new edges last, so an edge keeps its position within its row. Reverse edges
+ * are kept the same way, as the source and that position, so their weights are always read
+ * from the current row.
+ *
+ * <p>The logs and the new words are shared by all overlays of one base, and a {@link Builder}
+ * only writes past the part that published overlays can see, so every overlay stays immutable.
+ * The edge indices of an overlay are not dense, since replaced base rows stay in place; code that
+ * walks all edge indices works on {@link CompactGraph#dense}, which compacts the overlay into a
+ * plain graph with the same ids. A builder compacts on its own once the edge log grows larger
+ * than the base graph and than {@link #COMPACTION_MIN_EDGES}.
+ */
+final class GraphOverlay {
+
+  static final int PAGE_SIZE = 256;
+
+  /**
+   * The smallest edge log that is compacted into a new base graph.
+   */
+  static final int COMPACTION_MIN_EDGES = 1 << 16;
+
+  private static final int PAGE_SHIFT = 8;
+
+  private final CompactGraph base;
+  private final int baseNodes;
+  private final int baseEdges;
+  private final int nodeCount;
+  private final int edgeCount;
+  private final String[] words; // 新单词，id 为 baseNodes + 下标
+  // 同一基础图的叠加层共享，可能含有更晚加入的单词
+  private final Map<String, Integer> ids;
+  private final int logLength;
+  private final int[] sources;
+  private final int[] targets;
+  private final int[] weights;
+  private final int[][] rows;
+  private final int reverseLogLength;
+  private final int[] reverseSources;
+  private final int[] reversePositions; // 正向边在其起点的行中的位置
+  private final int[][] reverseRows;
+
+  private GraphOverlay(Builder b) {
+    this.base = b.base;
+    this.baseNodes = b.baseNodes;
+    this.baseEdges = b.baseEdges;
+    this.nodeCount = b.nodeCount;
+    this.edgeCount = b.edgeCount;
+    this.words = b.words;
+    this.ids = b.ids;
+    this.logLength = b.logLength;
+    this.sources = b.sources;
+    this.targets = b.targets;
+    this.weights = b.weights;
+    this.rows = b.rows;
+    this.reverseLogLength = b.reverseLogLength;
+    this.reverseSources = b.reverseSources;
+    this.reversePositions = b.reversePositions;
+    this.reverseRows = b.reverseRows;
+  }
+
+  CompactGraph base() {
+    return base;
+  }
+
+  int nodeCount() {
+    return nodeCount;
+  }
+
+  int edgeCount() {
+    return edgeCount;
+  }
+
+  int idOf(CharSequence text, int start, int end, int h) {
+    int id = base.idOf(text, start, end, h);
+    if (id >= 0 || nodeCount == baseNodes) {
+      return id;
+    }
+    Integer added = ids.get(text.subSequence(start, end).toString());
+    return added != null && added < nodeCount ? added : -1;
+  }
+
+  String word(int id) {
+    return id < baseNodes ? base.word(id) : words[id - baseNodes];
+  }
+
+  void appendWord(int id, StringBuilder out) {
+    if (id < baseNodes) {
+      base.appendWord(id, out);
+    } else {
+      out.append(words[id - baseNodes]);
+    }
+  }
+
+  int edgeStart(int node) {
+    int[] page = rows[node >>> PAGE_SHIFT];
+    int slot = 2 * (node & (PAGE_SIZE - 1));
+    return page != null && page[slot] != 0 ? baseEdges + page[slot] - 1 : base.edgeStart(node);
+  }
+
+  int edgeEnd(int node) {
+    int[] page = rows[node >>> PAGE_SHIFT];
+    int slot = 2 * (node & (PAGE_SIZE - 1));
+    return page != null && page[slot] != 0 ? baseEdges + page[slot + 1] : base.edgeEnd(node);
+  }
+
+  int source(int edge) {
+    return edge < baseEdges ? base.source(edge) : sources[edge - baseEdges];
+  }
+
+  int target(int edge) {
+    return edge < baseEdges ? base.target(edge) : targets[edge - baseEdges];
+  }
+
+  int weight(int edge) {
+    return edge < baseEdges ? base.weight(edge) : weights[edge - baseEdges];
+  }
+
+  int reverseEdgeStart(int node) {
+    int[] page = reverseRows[node >>> PAGE_SHIFT];
+    int slot = 2 * (node & (PAGE_SIZE - 1));
+    return page != null && page[slot] != 0
+            ? baseEdges + page[slot] - 1 : base.reverseEdgeStart(node);
+  }
+
+  int reverseEdgeEnd(int node) {
+    int[] page = reverseRows[node >>> PAGE_SHIFT];
+    int slot = 2 * (node & (PAGE_SIZE - 1));
+    return page != null && page[slot] != 0
+            ? baseEdges + page[slot + 1] : base.reverseEdgeEnd(node);
+  }
+
+  int reverseSource(int reverseEdge) {
+    return reverseEdge < baseEdges
+            ? base.reverseSource(reverseEdge) : reverseSources[reverseEdge - baseEdges];
+  }
+
+  int reverseEdgeOffset(int reverseEdge) {
+    return reverseEdge < baseEdges
+            ? base.reverseEdgeOffset(reverseEdge) : reversePositions[reverseEdge - baseEdges];
+  }
+
+  /**
+   * Rough heap size of the overlay in bytes, on top of the base graph. The shared logs are
+   * counted in full.
+   */
+  long estimatedBytes() {
+    long bytes = 4L * (sources.length + targets.length + weights.length
+            + reverseSources.length + reversePositions.length);
+    for (int[][] table : new int[][][] {rows, reverseRows}) {
+      bytes += 8L * table.length;
+      for (int[] page : table) {
+        bytes += page == null ? 0 : 8L * PAGE_SIZE;
+      }
+    }
+    for (int i = 0; i < nodeCount - baseNodes; i++) {
+      bytes += 24 + 16L + words[i].length(); // String 对象加 byte[]
+    }
+    return bytes;
+  }
+
+  /**
+   * Copies the overlay into a plain heap graph with the same ids and the same edge order within
+   * each row.
+   */
+  CompactGraph compact() {
+    String[] allWords = new String[nodeCount];
+    int[] offsets = new int[nodeCount + 1];
+    int[] compactTargets = new int[edgeCount];
+    int[] compactWeights = new int[edgeCount];
+    int edge = 0;
+    for (int node = 0; node < nodeCount; node++) {
+      allWords[node] = word(node);
+      offsets[node] = edge;
+      for (int e = edgeStart(node); e < edgeEnd(node); e++) {
+        compactTargets[edge] = target(e);
+        compactWeights[edge++] = weight(e);
+      }
+    }
+    offsets[nodeCount] = edge;
+    return CompactGraph.of(allWords, offsets, compactTargets, compactWeights);
+  }
+
+  /**
+   * Applies the words of one append to a graph and publishes the result as a new overlay. A
+   * builder is used by one thread at a time, and while it is in use no other builder may be
+   * started from the same graph or its successors. Nothing is visible to readers of existing
+   * graphs, so a builder that is dropped unbuilt leaves no trace.
+   */
+  static final class Builder implements WordTokenizer.WordSink {
+    private final CompactGraph graph;
+    private final CompactGraph base;
+    private final int baseNodes;
+    private final int baseEdges;
+    private int nodeCount;
+    private int edgeCount;
+    private String[] words;
+    private final Map<String, Integer> ids;
+    private int logLength;
+    private int[] sources;
+    private int[] targets;
+    private int[] weights;
+    private int[][] rows;
+    private int reverseLogLength;
+    private int[] reverseSources;
+    private int[] reversePositions;
+    private int[][] reverseRows;
+    private final BitSet copiedPages = new BitSet();
+    private final BitSet copiedReversePages = new BitSet();
+
+    // 本次追加的改动，build 之前只有构建器可见
+    private final Map<String, Integer> addedIds = new HashMap<>();
+    private final List<String> addedWords = new ArrayList<>();
+    private final List<Row> touched = new ArrayList<>();
+    private final LongIntMap rowOf = new LongIntMap(); // 节点 -> touched 中的下标
+    private final LongIntMap pending = new LongIntMap(); // 边 -> 在其 Row 中的下标
+    private final List<Predecessors> gained = new ArrayList<>();
+    private final LongIntMap predecessorsOf = new LongIntMap(); // 节点 -> gained 中的下标
+    private long[] newEdges = new long[16];
+    private int newEdgeCount;
+    private String previousWord;
+    private int previous = -1;
+    private long wordCount;
+
+    /**
+     * Starts an append to {@code graph}, whose text ended with {@code previousWord} (null if
+     * unknown), so that the first accepted word is linked to it.
+     */
+    Builder(CompactGraph graph, String previousWord) {
+      this.graph = graph;
+      this.previousWord = previousWord;
+      GraphOverlay overlay = graph.overlay();
+      if (overlay == null) {
+        base = graph;
+        baseNodes = graph.nodeCount();
+        baseEdges = graph.edgeCount();
+        nodeCount = baseNodes;
+        edgeCount = baseEdges;
+        words = new String[16];
+        ids = new ConcurrentHashMap<>();
+        sources = new int[64];
+        targets = new int[64];
+        weights = new int[64];
+        rows = new int[pages(nodeCount)][];
+        reverseSources = new int[64];
+        reversePositions = new int[64];
+        reverseRows = new int[pages(nodeCount)][];
+      } else {
+        base = overlay.base;
+        baseNodes = overlay.baseNodes;
+        baseEdges = overlay.baseEdges;
+        nodeCount = overlay.nodeCount;
+        edgeCount = overlay.edgeCount;
+        words = overlay.words;
+        ids = overlay.ids;
+        logLength = overlay.logLength;
+        sources = overlay.sources;
+        targets = overlay.targets;
+        weights = overlay.weights;
+        rows = overlay.rows.clone();
+        reverseLogLength = overlay.reverseLogLength;
+        reverseSources = overlay.reverseSources;
+        reversePositions = overlay.reversePositions;
+        reverseRows = overlay.reverseRows.clone();
+      }
+    }
+
+    @Override
+    public void accept(String word) {
+      wordCount++;
+      if (previous < 0 && previousWord != null) {
+        previous = intern(previousWord);
+      }
+      int id = intern(word);
+      if (previous >= 0) {
+        addEdge(previous, id);
+      }
+      previous = id;
+      previousWord = word;
+    }
+
+    long wordCount() {
+      return wordCount;
+    }
+
+    /**
+     * Returns the last accepted word, or the word the graph ended with if none was accepted.
+     */
+    String previousWord() {
+      return previousWord;
+    }
+
+    /**
+     * Returns the edges that did not exist before, as {@link Main.Graph#edgeKey} values. Only
+     * known once {@link #build} has run.
+     */
+    long[] newEdges() {
+      return Arrays.copyOf(newEdges, newEdgeCount);
+    }
+
+    /**
+     * Returns the nodes of the starting graph whose outgoing edges gained weight, new edges
+     * included.
+     */
+    int[] changedNodes() {
+      int[] nodes = new int[touched.size()];
+      int count = 0;
+      for (Row row : touched) {
+        if (row.node < graph.nodeCount() && row.size > 0) {
+          nodes[count++] = row.node;
+        }
+      }
+      return Arrays.copyOf(nodes, count);
+    }
+
+    /**
+     * Publishes the accepted words as a new graph: an overlay on the base graph, or a plain graph
+     * with the same ids if the edge log has outgrown the base.
+     */
+    CompactGraph build() {
+      for (String word : addedWords) {
+        int index = addedIds.get(word) - baseNodes;
+        if (index == words.length) {
+          words = Arrays.copyOf(words, 2 * index);
+        }
+        words[index] = word;
+      }
+      if (rows.length < pages(nodeCount)) {
+        rows = Arrays.copyOf(rows, pages(nodeCount));
+        reverseRows = Arrays.copyOf(reverseRows, pages(nodeCount));
+      }
+      for (Row row : touched) {
+        writeRow(row);
+      }
+      // 新边在行中的位置写入行时才确定，因此最后写反向行
+      for (Predecessors p : gained) {
+        writeReverseRow(p);
+      }
+      for (int id = graph.nodeCount(); id < nodeCount; id++) {
+        if (predecessorsOf.get(id) < 0) {
+          setRow(reverseRows, copiedReversePages, id, reverseLogLength, reverseLogLength);
+        }
+      }
+      ids.putAll(addedIds); // 只在单词写入之后公开
+      CompactGraph next = CompactGraph.of(new GraphOverlay(this));
+      long limit = Math.max(COMPACTION_MIN_EDGES, baseEdges);
+      return logLength > limit || reverseLogLength > limit ? next.dense() : next;
+    }
+
+    private int intern(String word) {
+      int id = graph.idOf(word);
+      if (id >= 0) {
+        return id;
+      }
+      Integer added = addedIds.get(word);
+      if (added != null) {
+        return added;
+      }
+      id = nodeCount++;
+      addedIds.put(word, id);
+      addedWords.add(word);
+      touch(id); // 新单词也需要一行，即使没有出边
+      return id;
+    }
+
+    private void addEdge(int from, int to) {
+      Row row = touch(from);
+      long key = Main.Graph.edgeKey(from, to);
+      int index = pending.get(key);
+      if (index >= 0) {
+        row.counts[index]++;
+      } else {
+        pending.put(key, row.add(to));
+      }
+    }
+
+    /**
+     * Returns the pending bigrams of {@code node} for this append, marking the node as touched.
+     */
+    private Row touch(int node) {
+      int index = rowOf.get(node);
+      if (index >= 0) {
+        return touched.get(index);
+      }
+      Row row = new Row(node);
+      rowOf.put(node, touched.size());
+      touched.add(row);
+      return row;
+    }
+
+    /**
+     * Copies the current row of {@code row.node} to the log, adding the pending counts to its
+     * edges and appending the pending edges it does not have yet.
+     */
+    private void writeRow(Row row) {
+      int node = row.node;
+      int start = node < graph.nodeCount() ? graph.edgeStart(node) : 0;
+      int oldEnd = node < graph.nodeCount() ? graph.edgeEnd(node) : 0;
+      int maxEnd = logLength + (oldEnd - start) + row.size;
+      if (maxEnd > targets.length) {
+        int capacity = Math.max(maxEnd, 2 * targets.length);
+        sources = Arrays.copyOf(sources, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+      }
+      int out = logLength;
+      int matched = 0;
+      for (int e = start; e < oldEnd; e++, out++) {
+        int target = graph.target(e);
+        targets[out] = target;
+        weights[out] = graph.weight(e);
+        // 所有待加的边都已找到后不再查表
+        if (matched < row.size) {
+          int index = pending.get(Main.Graph.edgeKey(node, target));
+          if (index >= 0) {
+            weights[out] += row.counts[index];
+            row.counts[index] = 0;
+            matched++;
+          }
+        }
+      }
+      for (int i = 0; i < row.size && matched < row.size; i++) {
+        if (row.counts[i] != 0) {
+          addNewEdge(node, row.targets[i], out - logLength);
+          targets[out] = row.targets[i];
+          weights[out++] = row.counts[i];
+        }
+      }
+      Arrays.fill(sources, logLength, out, node);
+      setRow(rows, copiedPages, node, logLength, out);
+      logLength = out;
+    }
+
+    private void addNewEdge(int from, int to, int position) {
+      edgeCount++;
+      if (newEdgeCount == newEdges.length) {
+        newEdges = Arrays.copyOf(newEdges, 2 * newEdgeCount);
+      }
+      newEdges[newEdgeCount++] = Main.Graph.edgeKey(from, to);
+      int index = predecessorsOf.get(to);
+      if (index < 0) {
+        index = gained.size();
+        gained.add(new Predecessors(to));
+        predecessorsOf.put(to, index);
+      }
+      gained.get(index).add(from, position);
+    }
+
+    /**
+     * Writes the reverse row of {@code p.node}: its current reverse edges merged with the new
+     * ones, ordered by source as in {@link CompactGraph#reverseEdgeStart}.
+     */
+    private void writeReverseRow(Predecessors p) {
+      int oldStart = p.node < graph.nodeCount() ? graph.reverseEdgeStart(p.node) : 0;
+      int oldEnd = p.node < graph.nodeCount() ? graph.reverseEdgeEnd(p.node) : 0;
+      int end = reverseLogLength + (oldEnd - oldStart) + p.size;
+      if (end > reverseSources.length) {
+        int capacity = Math.max(end, 2 * reverseSources.length);
+        reverseSources = Arrays.copyOf(reverseSources, capacity);
+        reversePositions = Arrays.copyOf(reversePositions, capacity);
+      }
+      Arrays.sort(p.entries, 0, p.size);
+      int out = reverseLogLength;
+      int r = oldStart;
+      for (int i = 0; i < p.size; i++) {
+        int source = (int) (p.entries[i] >>> 32);
+        for (; r < oldEnd && graph.reverseSource(r) < source; r++) {
+          reverseSources[out] = graph.reverseSource(r);
+          reversePositions[out++] = graph.reverseEdgeOffset(r);
+        }
+        reverseSources[out] = source;
+        reversePositions[out++] = (int) p.entries[i];
+      }
+      for (; r < oldEnd; r++) {
+        reverseSources[out] = graph.reverseSource(r);
+        reversePositions[out++] = graph.reverseEdgeOffset(r);
+      }
+      setRow(reverseRows, copiedReversePages, p.node, reverseLogLength, end);
+      reverseLogLength = end;
+    }
+
+    /**
+     * Points {@code node} at log entries {@code start} to {@code end - 1}, copying its page of
+     * {@code table} the first time this builder changes it.
+     */
+    private static void setRow(int[][] table, BitSet copied, int node, int start, int end) {
+      int p = node >>> PAGE_SHIFT;
+      if (!copied.get(p)) {
+        table[p] = table[p] == null ? new int[2 * PAGE_SIZE] : table[p].clone();
+        copied.set(p);
+      }
+      int slot = 2 * (node & (PAGE_SIZE - 1));
+      table[p][slot] = start + 1; // 0 表示仍使用基础图中的行
+      table[p][slot + 1] = end;
+    }
+
+    private static int pages(int nodeCount) {
+      return (nodeCount + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+    }
+  }
+
+  /**
+   * The distinct bigrams of one append that start at one node, with their counts.
+   */
+  private static final class Row {
+    final int node;
+    int[] targets = new int[4];
+    int[] counts = new int[4];
+    int size;
+
+    Row(int node) {
+      this.node = node;
+    }
+
+    int add(int target) {
+      if (size == targets.length) {
+        targets = Arrays.copyOf(targets, 2 * size);
+        counts = Arrays.copyOf(counts, 2 * size);
+      }
+      targets[size] = target;
+      counts[size] = 1;
+      return size++;
+    }
+  }
+
+  /**
+   * The new incoming edges of one node, as {@code source << 32 | position} values.
+   */
+  private static final class Predecessors {
+    final int node;
+    long[] entries = new long[4];
+    int size;
+
+    Predecessors(int node) {
+      this.node = node;
+    }
+
+    void add(int source, int position) {
+      if (size == entries.length) {
+        entries = Arrays.copyOf(entries, 2 * size);
+      }
+      entries[size++] = ((long) source << 32) | position;
+    }
+  }
+
+  /**
+   * Open-addressing hash table from non-negative long keys to int values, without boxing.
+   */
+  private static final class LongIntMap {
+    private static final long EMPTY = -1L;
+
+    private long[] keys = emptyKeys(16);
+    private int[] values = new int[16];
+    private int size;
+
+    /**
+     * Returns the value of {@code key}, or -1 if it has none.
+     */
+    int get(long key) {
+      int mask = keys.length - 1;
+      for (int slot = slotOf(key, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+      }
+      return -1;
+    }
+
+    void put(long key, int value) {
+      int mask = keys.length - 1;
+      int slot = slotOf(key, mask);
+      for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          values[slot] = value;
+          return;
+        }
+      }
+      keys[slot] = key;
+      values[slot] = value;
+      // 装载因子保持在 0.5 以下
+      if (2 * ++size > keys.length) {
+        rehash();
+      }
+    }
+
+    private void rehash() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = emptyKeys(oldKeys.length * 2);
+      values = new int[oldKeys.length * 2];
+      int mask = keys.length - 1;
+      for (int old = 0; old < oldKeys.length; old++) {
+        if (oldKeys[old] != EMPTY) {
+          int slot = slotOf(oldKeys[old], mask);
+          while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[old];
+          values[slot] = oldValues[old];
+        }
+      }
+    }
+
+    private static long[] emptyKeys(int capacity) {
+      long[] keys = new long[capacity];
+      Arrays.fill(keys, EMPTY);
+      return keys;
+    }
+
+    private static int slotOf(long key, int mask) {
+      return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+  }
+}
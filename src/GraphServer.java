@@ -0,0 +1,214 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Headless line-protocol server that answers graph queries for many clients at once.
+ *
+ * <p>The server listens on the loopback interface only. Each request is a single line:
+ *
+ * <ul>
+ *     <li>{@code BRIDGE word1 word2} - bridge words, as {@link Main.Graph#queryBridgeWords}</li>
+ *     <li>{@code TEXT some text} - text with bridge words inserted</li>
+ *     <li>{@code PATH word1 word2} - shortest path between two words</li>
+ *     <li>{@code PATH word} - shortest paths from one word to all others</li>
+ *     <li>{@code KPATHS word1 word2 [k]} - the k shortest paths (k at most 100), or all equally
+ *     short ones</li>
+ *     <li>{@code WALK} - a random walk that stops on a dead end or a repeated edge</li>
+ *     <li>{@code RANK [k]} - the k words with the highest PageRank</li>
+ *     <li>{@code TOP [k]} - the k most frequent words and the k heaviest edges</li>
+ *     <li>{@code STATS} - hit, miss and eviction counts of the result cache</li>
+ *     <li>{@code METRICS} - the {@link Metrics} dump</li>
+ *     <li>{@code QUIT} - closes the connection</li>
+ * </ul>
+ *
+ * <p>A response is the result lines followed by a line holding a single {@code "."}; result
+ * lines that start with {@code "."} are sent with an extra leading {@code "."}. Every connection
+ * is handled on its own thread (a virtual thread when the runtime provides them) and only reads
+ * the shared, immutable graph; repeated bridge-word and shortest-path queries are answered from a
+ * shared {@link QueryCache}.
+ */
+final class GraphServer implements Closeable {
+
+  private static final int CACHED_BRIDGE_RESULTS = 100_000;
+  private static final int CACHED_TREES = 64;
+  // 每条路径都需要多次 Dijkstra，限制单个请求的开销
+  private static final int MAX_PATHS = 100;
+
+  private final BridgeWords bridgeWords;
+  private final QueryCache cache;
+  private final ServerSocket serverSocket;
+  private final ExecutorService executor;
+
+  /**
+   * Binds the server to {@code port} on the loopback interface; port 0 picks a free port.
+   */
+  GraphServer(BridgeWords bridgeWords, int port) throws IOException {
+    this.bridgeWords = bridgeWords;
+    this.cache = new QueryCache(bridgeWords, CACHED_BRIDGE_RESULTS,
+            (long) CACHED_TREES * Math.max(1, bridgeWords.graph().nodeCount()));
+    this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    this.executor = newThreadPerTaskExecutor();
+  }
+
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Accepts connections on a background thread and returns immediately.
+   */
+  void start() {
+    executor.execute(this::serve);
+  }
+
+  /**
+   * Accepts connections on the calling thread until the server is closed.
+   */
+  void serve() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        executor.execute(() -> handleConnection(socket));
+      } catch (SocketException e) {
+        return; // 服务器已关闭
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  private void handleConnection(Socket socket) {
+    try (socket;
+         BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         BufferedWriter out = new BufferedWriter(
+                 new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if ("QUIT".equalsIgnoreCase(line.trim())) {
+          break;
+        }
+        handle(line, out);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // 客户端断开连接，无需处理
+    }
+  }
+
+  /**
+   * Answers one request line, writing the response and its terminator to {@code out}.
+   */
+  void handle(String request, Writer out) throws IOException {
+    String line = request.trim();
+    int space = line.indexOf(' ');
+    // 与默认语言环境无关，例如土耳其语中 "bridge" 会转成 "BRİDGE"
+    String command = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+    String argument = space < 0 ? "" : line.substring(space + 1).trim().toLowerCase(Locale.ROOT);
+    String[] args = argument.isEmpty() ? new String[0] : argument.split("\\s+");
+    CompactGraph graph = bridgeWords.graph();
+    switch (command) {
+      case "BRIDGE":
+        if (args.length != 2) {
+          writeLines(Stream.of("ERROR usage: BRIDGE word1 word2"), out);
+        } else {
+          writeLines(Stream.of(cache.queryBridgeWords(args[0], args[1])), out);
+        }
+        break;
+      case "TEXT":
+        writeLines(Stream.of(Main.Graph.generateNewText(argument, bridgeWords)), out);
+        break;
+      case "PATH":
+        if (args.length == 1 || (args.length == 2 && args[0].equals(args[1]))) {
+          writeLines(cache.shortestPathsFrom(args[0]), out);
+        } else if (args.length == 2) {
+          writeLines(Stream.of(cache.calcShortestPath(args[0], args[1])), out);
+        } else {
+          writeLines(Stream.of("ERROR usage: PATH word1 [word2]"), out);
+        }
+        break;
+      case "KPATHS":
+        if (args.length == 3 && args[2].matches("\\d{1,6}")) {
+          int k = Integer.parseInt(args[2]);
+          writeLines(Stream.of(k > MAX_PATHS ? "ERROR k must be at most " + MAX_PATHS
+                  : Main.Graph.calcKShortestPaths(args[0], args[1], k, graph)), out);
+        } else if (args.length == 2) {
+          writeLines(Stream.of(Main.Graph.calcAllShortestPaths(args[0], args[1],
+                  MAX_PATHS, graph)), out);
+        } else {
+          writeLines(Stream.of("ERROR usage: KPATHS word1 word2 [k]"), out);
+        }
+        break;
+      case "WALK":
+        writeLines(Stream.of(Main.Graph.randomWalk(graph, ThreadLocalRandom.current())), out);
+        break;
+      case "RANK":
+      case "TOP":
+        if (args.length > 1 || (args.length == 1 && !args[0].matches("\\d{1,6}"))) {
+          writeLines(Stream.of("ERROR usage: " + command + " [k]"), out);
+        } else {
+          int k = args.length == 1 ? Integer.parseInt(args[0]) : Main.RANKED_WORDS;
+          writeLines(Stream.of("RANK".equals(command)
+                  ? Main.Graph.rankWords(k, graph) : Main.Graph.topFrequent(k, graph)), out);
+        }
+        break;
+      case "STATS":
+        writeLines(Stream.of(cache.toString()), out);
+        break;
+      case "METRICS":
+        writeLines(Stream.of(Metrics.dump().stripTrailing()), out);
+        break;
+      default:
+        writeLines(Stream.of("ERROR unknown command: " + command), out);
+    }
+  }
+
+  private static void writeLines(Stream<String> results, Writer out) throws IOException {
+    Iterator<String> iterator = results.iterator();
+    while (iterator.hasNext()) {
+      for (String line : iterator.next().split("\n", -1)) {
+        if (line.startsWith(".")) {
+          out.write('.');
+        }
+        out.write(line);
+        out.write('\n');
+      }
+    }
+    out.write(".\n");
+  }
+
+  /**
+   * Uses virtual threads when the runtime has them (Java 21+) and falls back to a cached pool of
+   * platform threads otherwise.
+   */
+  private static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+              .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int node ids keyed by int priorities, with O(log n) decrease-key.
+ *
+ * <p>Each node is in the heap at most once; {@code position} maps a node to its slot so that a
+ * lowered key can be sifted up in place instead of removing and re-adding the node.
+ */
+final class IndexedMinHeap {
+
+  private final int[] heap;
+  private final int[] position;
+  private final int[] keys;
+  private int size;
+
+  IndexedMinHeap(int capacity) {
+    heap = new int[capacity];
+    position = new int[capacity];
+    keys = new int[capacity];
+    Arrays.fill(position, -1);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean contains(int node) {
+    return position[node] >= 0;
+  }
+
+  int key(int node) {
+    return keys[node];
+  }
+
+  /**
+   * Inserts {@code node} with {@code key}, or lowers its key if it is already in the heap and
+   * {@code key} is smaller.
+   */
+  void insertOrDecrease(int node, int key) {
+    int pos = position[node];
+    if (pos < 0) {
+      keys[node] = key;
+      heap[size] = node;
+      position[node] = size;
+      siftUp(size++);
+    } else if (key < keys[node]) {
+      keys[node] = key;
+      siftUp(pos);
+    }
+  }
+
+  /**
+   * Returns the smallest key without removing its node; the heap must not be empty.
+   */
+  int minKey() {
+    return keys[heap[0]];
+  }
+
+  /**
+   * Removes and returns the node with the smallest key.
+   */
+  int poll() {
+    int top = heap[0];
+    position[top] = -1;
+    int last = heap[--size];
+    if (size > 0) {
+      heap[0] = last;
+      position[last] = 0;
+      siftDown(0);
+    }
+    return top;
+  }
+
+  /**
+   * Removes every node, in time proportional to the number of nodes in the heap.
+   */
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      position[heap[i]] = -1;
+    }
+    size = 0;
+  }
+
+  private void siftUp(int pos) {
+    int node = heap[pos];
+    int key = keys[node];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      int parentNode = heap[parent];
+      if (keys[parentNode] <= key) {
+        break;
+      }
+      heap[pos] = parentNode;
+      position[parentNode] = pos;
+      pos = parent;
+    }
+    heap[pos] = node;
+    position[node] = pos;
+  }
+
+  private void siftDown(int pos) {
+    int node = heap[pos];
+    int key = keys[node];
+    int half = size >>> 1;
+    while (pos < half) {
+      int child = 2 * pos + 1;
+      int right = child + 1;
+      if (right < size && keys[heap[right]] < keys[heap[child]]) {
+        child = right;
+      }
+      int childNode = heap[child];
+      if (key <= keys[childNode]) {
+        break;
+      }
+      heap[pos] = childNode;
+      position[childNode] = pos;
+      pos = child;
+    }
+    heap[pos] = node;
+    position[node] = pos;
+  }
+}
@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Yen's algorithm for the k shortest loopless paths between two nodes of a {@link CompactGraph}.
+ *
+ * <p>Starting from the shortest path, each further path is found by deviating from a previous
+ * one at every node in turn: the prefix up to that node is kept, the edges that earlier paths
+ * with the same prefix took next are blocked, as are the prefix nodes themselves, and a Dijkstra
+ * search from the deviation node completes the candidate. The cheapest candidate becomes the
+ * next path. One search workspace is reused for every deviation and reset only where touched.
+ */
+final class KShortestPaths {
+
+  private final CompactGraph graph;
+  private final int target;
+  private final int[] distances;
+  private final int[] previous;
+  private final boolean[] blockedNodes;
+  private final boolean[] blockedEdges;
+  private final IndexedMinHeap queue;
+  private int[] touched = new int[64];
+  private int touchedCount;
+
+  private KShortestPaths(CompactGraph graph, int target) {
+    this.graph = graph.dense(); // 被屏蔽的边按边编号记录
+    this.target = target;
+    int nodeCount = graph.nodeCount();
+    distances = new int[nodeCount];
+    previous = new int[nodeCount];
+    blockedNodes = new boolean[nodeCount];
+    blockedEdges = new boolean[graph.edgeCount()];
+    queue = new IndexedMinHeap(nodeCount);
+    Arrays.fill(distances, ShortestPathTree.UNREACHABLE);
+  }
+
+  /**
+   * Returns up to {@code k} loopless paths from {@code source} to {@code target}, shortest first.
+   */
+  static List<BidirectionalDijkstra.Path> find(CompactGraph graph, int source, int target,
+                                                int k) {
+    return new KShortestPaths(graph, target).search(source, k, false);
+  }
+
+  /**
+   * Returns every shortest path from {@code source} to {@code target}, up to {@code limit} of
+   * them, or an empty list if {@code target} is unreachable.
+   */
+  static List<BidirectionalDijkstra.Path> allShortest(CompactGraph graph, int source, int target,
+                                                      int limit) {
+    return new KShortestPaths(graph, target).search(source, limit, true);
+  }
+
+  /**
+   * Runs Yen's algorithm until {@code k} paths are found or no candidate is left; with
+   * {@code equalCost} set, only candidates as short as the first path are kept.
+   */
+  private List<BidirectionalDijkstra.Path> search(int source, int k, boolean equalCost) {
+    List<BidirectionalDijkstra.Path> paths = new ArrayList<>();
+    if (k <= 0) {
+      return paths;
+    }
+    int[] first = shortestFrom(source);
+    if (first == null) {
+      return paths;
+    }
+    PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    Set<List<Integer>> seen = new HashSet<>();
+    List<int[]> found = new ArrayList<>();
+    found.add(first);
+    seen.add(asList(first));
+    paths.add(toPath(first));
+    long maxLength = equalCost ? distanceOf(first) : Long.MAX_VALUE;
+    int[] blocked = new int[16];
+
+    while (paths.size() < k) {
+      int[] last = found.get(found.size() - 1);
+      // 依次以上一条路径的每个节点作为偏离点
+      int rootLength = 0;
+      for (int i = 0; i + 1 < last.length; i++) {
+        int spurNode = last[i];
+        int blockedCount = 0;
+        for (int[] path : found) {
+          if (path.length > i + 1 && Arrays.equals(path, 0, i + 1, last, 0, i + 1)) {
+            int e = edgeIndex(path[i], path[i + 1]);
+            if (!blockedEdges[e]) {
+              if (blockedCount == blocked.length) {
+                blocked = Arrays.copyOf(blocked, blockedCount * 2);
+              }
+              blockedEdges[e] = true;
+              blocked[blockedCount++] = e;
+            }
+          }
+        }
+        for (int j = 0; j < i; j++) {
+          blockedNodes[last[j]] = true;
+        }
+        int[] spur = shortestFrom(spurNode);
+        if (spur != null) {
+          int[] candidate = Arrays.copyOf(last, i + spur.length);
+          System.arraycopy(spur, 0, candidate, i, spur.length);
+          long length = (long) rootLength + distanceOf(spur);
+          if (length <= maxLength && seen.add(asList(candidate))) {
+            candidates.add(new Candidate(candidate, length));
+          }
+        }
+        for (int j = 0; j < blockedCount; j++) {
+          blockedEdges[blocked[j]] = false;
+        }
+        for (int j = 0; j < i; j++) {
+          blockedNodes[last[j]] = false;
+        }
+        rootLength += graph.weight(edgeIndex(last[i], last[i + 1]));
+      }
+      Candidate next = candidates.poll();
+      if (next == null) {
+        break;
+      }
+      found.add(next.nodes);
+      paths.add(toPath(next.nodes));
+    }
+    return paths;
+  }
+
+  /**
+   * Dijkstra from {@code source} to the target avoiding blocked nodes and edges; returns the
+   * node ids of the path, or null if the target cannot be reached.
+   */
+  private int[] shortestFrom(int source) {
+    touch(source);
+    distances[source] = 0;
+    previous[source] = -1;
+    queue.insertOrDecrease(source, 0);
+    boolean reached = false;
+    while (!queue.isEmpty()) {
+      int node = queue.poll();
+      if (node == target) {
+        reached = true;
+        break;
+      }
+      for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+        int neighbor = graph.target(e);
+        int newDist = distances[node] + graph.weight(e);
+        if (!blockedEdges[e] && !blockedNodes[neighbor] && newDist < distances[neighbor]) {
+          touch(neighbor);
+          distances[neighbor] = newDist;
+          previous[neighbor] = node;
+          queue.insertOrDecrease(neighbor, newDist);
+        }
+      }
+    }
+    int[] path = null;
+    if (reached) {
+      int hops = 1;
+      for (int at = target; at != source; at = previous[at]) {
+        hops++;
+      }
+      path = new int[hops];
+      for (int at = target; hops > 0; at = previous[at]) {
+        path[--hops] = at;
+      }
+    }
+    for (int i = 0; i < touchedCount; i++) {
+      distances[touched[i]] = ShortestPathTree.UNREACHABLE;
+    }
+    touchedCount = 0;
+    queue.clear();
+    return path;
+  }
+
+  private void touch(int node) {
+    if (distances[node] == ShortestPathTree.UNREACHABLE) {
+      if (touchedCount == touched.length) {
+        touched = Arrays.copyOf(touched, touchedCount * 2);
+      }
+      touched[touchedCount++] = node;
+    }
+  }
+
+  private int edgeIndex(int from, int to) {
+    for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+      if (graph.target(e) == to) {
+        return e;
+      }
+    }
+    throw new IllegalArgumentException("No edge " + from + " -> " + to);
+  }
+
+  private long distanceOf(int[] nodes) {
+    long length = 0;
+    for (int i = 0; i + 1 < nodes.length; i++) {
+      length += graph.weight(edgeIndex(nodes[i], nodes[i + 1]));
+    }
+    return length;
+  }
+
+  private BidirectionalDijkstra.Path toPath(int[] nodes) {
+    return new BidirectionalDijkstra.Path(graph, nodes, (int) distanceOf(nodes));
+  }
+
+  private static List<Integer> asList(int[] nodes) {
+    List<Integer> list = new ArrayList<>(nodes.length);
+    for (int node : nodes) {
+      list.add(node);
+    }
+    return list;
+  }
+
+  /**
+   * A candidate path ordered by length, then by fewer hops.
+   */
+  private static final class Candidate implements Comparable<Candidate> {
+    final int[] nodes;
+    final long length;
+
+    Candidate(int[] nodes, long length) {
+      this.nodes = nodes;
+      this.length = length;
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+      int byLength = Long.compare(length, other.length);
+      return byLength != 0 ? byLength : Integer.compare(nodes.length, other.nodes.length);
+    }
+  }
+}
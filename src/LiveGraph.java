@@ -0,0 +1,153 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A word graph that grows as more text is appended, while readers work on immutable snapshots.
+ *
+ * <p>Appends are serialized and merge the new words and edge counts into the graph, continuing
+ * from the last word of the previous text so that the edge across the boundary is counted. Each
+ * append then publishes a new {@link Snapshot} with a higher version; a reader that holds a
+ * snapshot keeps a consistent graph however many appends happen meanwhile. The graph of a
+ * snapshot is a {@link GraphOverlay} that copies only the rows the append touched, so an append
+ * costs time in proportion to the text and the rows it changes, not to the whole graph; the
+ * overlay is compacted into a plain graph from time to time. Word ids never change between
+ * snapshots (new words get new, higher ids), which lets the bridge-word index be extended with
+ * just the pairs created by new edges, and lets {@link Listener}s update other derived data
+ * incrementally.
+ */
+final class LiveGraph {
+
+  /**
+   * One immutable version of the graph together with its bridge-word lookups.
+   */
+  static final class Snapshot {
+    private final long version;
+    private final CompactGraph graph;
+    private final BridgeWords bridgeWords;
+
+    Snapshot(long version, CompactGraph graph, BridgeWords bridgeWords) {
+      this.version = version;
+      this.graph = graph;
+      this.bridgeWords = bridgeWords;
+    }
+
+    long version() {
+      return version;
+    }
+
+    CompactGraph graph() {
+      return graph;
+    }
+
+    BridgeWords bridgeWords() {
+      return bridgeWords;
+    }
+  }
+
+  /**
+   * Notified after each append with the previous and the new snapshot, the edges that did not
+   * exist before as {@link Main.Graph#edgeKey} values over the new snapshot's ids, and the nodes
+   * of the previous snapshot whose outgoing edges gained weight.
+   */
+  interface Listener {
+    void onUpdate(Snapshot previous, Snapshot current, long[] newEdges, int[] changedNodes);
+  }
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private String lastWord; // 由 this 保护
+  private GraphOverlay.Builder pending; // 读取失败的追加，由 this 保护
+  private volatile Snapshot current;
+
+  /**
+   * Starts from {@code initial}, whose text ended with {@code lastWord} (null if unknown). With
+   * {@code indexBridges} set, bridge words are served from a precomputed index that is extended
+   * on every append; otherwise they are looked up directly in the graph.
+   */
+  LiveGraph(Map<String, Map<String, Integer>> initial, String lastWord, boolean indexBridges) {
+    this.lastWord = lastWord;
+    CompactGraph compact = CompactGraph.from(initial);
+    current = new Snapshot(0, compact,
+            indexBridges ? BridgeWords.indexed(compact) : BridgeWords.direct(compact));
+  }
+
+  /**
+   * Builds a live graph from a file, remembering its last word for the next append.
+   */
+  static LiveGraph load(Path file, boolean indexBridges) throws IOException {
+    GraphBuilder builder = new GraphBuilder();
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      WordTokenizer.tokenize(reader, builder);
+    }
+    return new LiveGraph(builder.graph(), builder.previousWord(), indexBridges);
+  }
+
+  Snapshot snapshot() {
+    return current;
+  }
+
+  void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  Snapshot append(String text) {
+    try {
+      return append(new StringReader(text));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // StringReader 不会抛出 IOException
+    }
+  }
+
+  /**
+   * Appends the part of {@code file} from {@code offset} to its current end, e.g. the lines
+   * written to a log since the last call.
+   */
+  Snapshot appendFile(Path file, long offset) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      channel.position(offset);
+      return append(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Appends all text of {@code reader} and publishes the resulting snapshot. The text is taken to
+   * end on a word boundary. If reading fails, the words read so far are kept and become visible
+   * with the next successful append.
+   */
+  synchronized Snapshot append(Reader reader) throws IOException {
+    if (pending == null) {
+      pending = new GraphOverlay.Builder(current.graph(), lastWord);
+    }
+    WordTokenizer.tokenize(reader, pending); // 失败时保留 pending，下次追加继续使用
+    GraphOverlay.Builder builder = pending;
+    pending = null;
+    if (builder.wordCount() == 0) {
+      return current; // 没有新单词，图未改变
+    }
+    lastWord = builder.previousWord();
+
+    Snapshot previous = current;
+    CompactGraph next = builder.build();
+    long[] newEdges = builder.newEdges();
+    int[] changedNodes = builder.changedNodes();
+    long version = previous.version() + 1;
+    current = new Snapshot(version, next,
+            previous.bridgeWords().withNewEdges(next, newEdges, version));
+    Metrics.graphLoaded(next);
+    for (Listener listener : listeners) {
+      listener.onUpdate(previous, current, newEdges, changedNodes);
+    }
+    return current;
+  }
+}
@@ -2,20 +2,22 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 //运行
 //javac -encoding UTF-8 Main.java
@@ -36,14 +38,27 @@ import java.util.Set;
  * </ul>
  * <p>
  * Each option in the menu corresponds to a specific functionality implemented in the class.
- * The graph is built from a file whose path is provided as a command-line argument.
+ * The graph is built from a file whose path is provided as a command-line argument, or loaded
+ * directly if the file is a {@link GraphFile} snapshot; a directory, a glob or an {@code @list}
+ * of files is ingested in parallel by {@link CorpusBuilder}. With {@code --save snapshot} after the
+ * file path, the graph is saved as such a snapshot; with {@code --distances file}, the distances
+ * between all words are written as a {@link DistanceMatrix}. With {@code --serve [port]}, the
+ * same queries are served to local clients by a {@link GraphServer} instead of the menu. Running
+ * with {@code -Dlab1.metrics=true} turns on {@link Metrics}, printed on exit and published over
+ * JMX; with {@code -Dlab1.offHeap=true} the graph is kept in direct memory, for graphs larger
+ * than the heap (raise {@code -XX:MaxDirectMemorySize} to match). Bridge words are served from a
+ * two-hop index only if {@link BridgeWords#forGraph} finds it small enough.
  * </p>
  */
 public class Main {
 
+  static final int DEFAULT_PORT = 7070;
+  static final int MAX_RENDERED_EDGES = 5000; // Graphviz 难以绘制更大的图
+  static final int RANKED_WORDS = 10; // 菜单中排行榜的长度
+
   /**
    * The entry point of the application. Reads the file path argument from the command line, and
-   * builds a directed graph from the file using the {@link Graph#buildGraph} method.
+   * builds a directed graph from the file using the {@link Graph#loadGraph} method.
    */
 
   public static void main(String[] args) {
@@ -53,7 +68,45 @@ public class Main {
     }
 
     String filePath = args[0]; // 获取文件路径参数
-    Map<String, Map<String, Integer>> graph = Graph.buildGraph(filePath);
+    Metrics.registerMBean(); // 仅在 -Dlab1.metrics=true 时生效
+    CompactGraph compact = Graph.loadGraph(filePath);
+
+    // java Main y.txt --save y.wgraph：保存二进制快照，下次启动时可直接加载
+    if (args.length >= 3 && "--save".equals(args[1])) {
+      try {
+        GraphFile.save(compact, Paths.get(args[2]));
+        System.out.println("Graph snapshot saved as: " + args[2]);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
+
+    // java Main y.txt --distances out.dist：并行计算所有单词之间的距离并写入文件
+    if (args.length >= 3 && "--distances".equals(args[1])) {
+      try {
+        DistanceMatrix.write(compact, Paths.get(args[2]));
+        System.out.println("Distance matrix saved as: " + args[2]);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
+
+    // 两跳索引仅在图足够小或 -Dlab1.bridgeIndex=true 时构建，否则逐次扫描
+    BridgeWords bridgeIndex = BridgeWords.forGraph(compact);
+
+    // java Main y.txt --serve [port]：以无界面服务模式运行
+    if (args.length >= 2 && "--serve".equals(args[1])) {
+      int port = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+      try (GraphServer server = new GraphServer(bridgeIndex, port)) {
+        System.out.println("Serving graph queries on localhost:" + server.port());
+        server.serve();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
 
     while (true) {
       System.out.println("1. Show directed graph");
@@ -61,27 +114,23 @@ public class Main {
       System.out.println("3. Generate New Text");
       System.out.println("4. Calc Shortest Path");
       System.out.println("5. Random Walk");
+      System.out.println("6. Rank Words");
       System.out.println("0. Exit");
       Scanner scanner = new Scanner(System.in, Charset.forName("UTF-8"));
       int choice = scanner.nextInt();
       scanner.nextLine();
       switch (choice) {
         case 0:
+          if (Metrics.ENABLED) {
+            System.out.print(Metrics.dump());
+          }
           return;
         case 1:
-          Graph.showDirectedGraph(graph);
-          // 读取文件并获取Dot语言描述的有向图
-          String dotGraph = Graph.generateDotGraph(graph);
-
-          // 保存Dot语言描述的有向图到文件
-          String dotFilePath = "graph.dot";
-          Graph.saveDotFile(dotGraph, dotFilePath);
-
-          // 使用Graphviz生成图片
-          String imageFilePath = "graph.png";
-          Graph.generateImage(dotFilePath, imageFilePath);
-
-          System.out.println("Graph visualization saved as: " + imageFilePath);
+          Graph.showDirectedGraph(compact);
+          // 将Dot语言描述的有向图直接写入文件，
+          // 过大的图只保留权重最高的边
+          Graph.renderDotAsync(compact, DotWriter.Options.all().topEdges(MAX_RENDERED_EDGES),
+                  "graph.dot", "graph.png");
           break;
         case 2:
           System.out.print("Enter word1: ");
@@ -90,14 +139,14 @@ public class Main {
           System.out.print("Enter word2: ");
           String word2 = scanner.nextLine();
           word1 = word1.toLowerCase();
-          String bridgeWords = Graph.queryBridgeWords(word1, word2, graph);
+          String bridgeWords = Graph.queryBridgeWords(word1, word2, bridgeIndex);
           System.out.println(bridgeWords);
           break;
         case 3:
           System.out.println("Enter your text:");
           String inputText = scanner.nextLine();
           inputText = inputText.toLowerCase();
-          String outputText = Graph.generateNewText(inputText, graph);
+          String outputText = Graph.generateNewText(inputText, bridgeIndex);
           System.out.println("Modified text with bridge words:");
           System.out.println(outputText);
           ;
@@ -113,24 +162,23 @@ public class Main {
           String shortestPath;
 
           if (input.isEmpty() || word1.equals(input.toLowerCase())) {
-            // 用户只输入了一个单词，调用新的 calcShortestPathSingleWord 方法
-            shortestPath = Graph.calcShortestPathSingleWord(word1, graph);
-            System.out.println(shortestPath);
+            // 用户只输入了一个单词，逐条输出从该单词出发的所有最短路径
+            Graph.shortestPathsFrom(word1, compact).forEach(System.out::println);
           } else {
             word2 = input.toLowerCase();
             // 用户输入了两个单词，调用现有的 calcShortestPath 方法
-            shortestPath = Graph.calcShortestPath(word1, word2, graph);
+            shortestPath = Graph.calcShortestPath(word1, word2, compact);
             String[] parts = shortestPath.split("\n");
             if (parts.length == 1) {
               System.out.println(parts[0]);
             } else {
               String paths = parts[1];
               List<String> path = List.of(paths.split(" -> "));
-              String dotshortestGraph = Graph.generateDotGraphWithHighlight(graph, path);
-              String dotPath = "shortest_path.dot";
-              String imagePath = "shortest_path.png";
-              Graph.saveDotFile(dotshortestGraph, dotPath);
-              Graph.generateImage(dotPath, imagePath);
+              DotWriter.Options options = DotWriter.Options.all().highlight(path);
+              if (compact.edgeCount() > MAX_RENDERED_EDGES) {
+                options = options.neighborhood(1).topEdges(MAX_RENDERED_EDGES);
+              }
+              Graph.renderDotAsync(compact, options, "shortest_path.dot", "shortest_path.png");
               System.out.println(shortestPath);
             }
           }
@@ -138,7 +186,7 @@ public class Main {
         case 5:
           System.out.println("Starting random walk...");
           System.out.println("Press Enter to continue or type 'stop' to end:");
-          String walkResult = Graph.randomWalk(graph);
+          String walkResult = Graph.randomWalk(compact);
           System.out.println("Random walk result:");
           System.out.println(walkResult);
           try {
@@ -148,6 +196,10 @@ public class Main {
             e.printStackTrace();
           }
           break;
+        case 6:
+          System.out.println(Graph.rankWords(RANKED_WORDS, compact));
+          System.out.println(Graph.topFrequent(RANKED_WORDS, compact));
+          break;
         default:
           System.out.println("Invalid choice. Please try again.");
       }
@@ -155,9 +207,18 @@ public class Main {
   }
 
 
+  /**
+   * The query API over the map form returned by {@link #buildGraph}. Each query also has a
+   * {@link CompactGraph} overload that does the work. The map overloads are adapters that convert
+   * the map with {@link CompactGraph#from} on every call, which costs O(V + E) time and memory
+   * before the query runs, even for a short text or a single pair of words. Code that queries one
+   * graph more than once should convert it once and use the {@code CompactGraph} overloads, as
+   * {@link Main#main} does.
+   */
   static class Graph {
 
     public static Map<String, Map<String, Integer>> buildGraph(String filePath) {
+      long start = Metrics.start();
       Map<String, Map<String, Integer>> graph = new HashMap<>();
       try (BufferedReader br = new BufferedReader(
               new FileReader(filePath, StandardCharsets.UTF_8))) {
@@ -187,10 +248,125 @@ public class Main {
       } catch (IOException e) {
         e.printStackTrace();
       }
+      Metrics.record(Metrics.Operation.BUILD_GRAPH, start);
+      return graph;
+    }
+
+    /**
+     * Builds the same graph as {@link #buildGraph} while reading the file in a single streaming
+     * pass, so peak memory depends on the vocabulary rather than on the file size.
+     */
+    public static Map<String, Map<String, Integer>> buildGraphStreaming(String filePath) {
+      long start = Metrics.start();
+      GraphBuilder builder = new GraphBuilder();
+      try (BufferedReader br = new BufferedReader(
+              new FileReader(filePath, StandardCharsets.UTF_8))) {
+        WordTokenizer.tokenize(br, builder);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      Metrics.record(Metrics.Operation.BUILD_GRAPH_STREAMING, start);
+      return builder.graph();
+    }
+
+    /**
+     * Builds the same graph as {@link #buildGraph} by memory-mapping the file and tokenizing
+     * whitespace-aligned chunks in parallel on the common fork-join pool.
+     */
+    public static Map<String, Map<String, Integer>> buildGraphParallel(String filePath) {
+      long start = Metrics.start();
+      try {
+        return ParallelGraphBuilder.build(Paths.get(filePath));
+      } catch (IOException e) {
+        e.printStackTrace();
+        return new HashMap<>();
+      } finally {
+        Metrics.record(Metrics.Operation.BUILD_GRAPH_PARALLEL, start);
+      }
+    }
+
+    /**
+     * Builds the same graph as {@link #buildGraph} in a single streaming pass, keeping the words,
+     * edges and weights in direct memory with {@link OffHeapGraphBuilder}.
+     */
+    public static CompactGraph buildGraphOffHeap(String filePath) {
+      long start = Metrics.start();
+      OffHeapGraphBuilder builder = new OffHeapGraphBuilder();
+      try (BufferedReader br = new BufferedReader(
+              new FileReader(filePath, StandardCharsets.UTF_8))) {
+        WordTokenizer.tokenize(br, builder);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      CompactGraph graph = builder.build();
+      Metrics.record(Metrics.Operation.BUILD_GRAPH_OFF_HEAP, start);
+      return graph;
+    }
+
+    /**
+     * Builds an approximate graph holding only the edges that occur at least
+     * {@code options.minCount()} times, counted in fixed memory by {@link SketchGraphBuilder}.
+     * Weights may be overestimated within the sketch's error bounds.
+     */
+    public static Map<String, Map<String, Integer>> buildGraphApproximate(
+            String filePath, SketchGraphBuilder.Options options) {
+      long start = Metrics.start();
+      SketchGraphBuilder builder = new SketchGraphBuilder(options);
+      try (BufferedReader br = new BufferedReader(
+              new FileReader(filePath, StandardCharsets.UTF_8))) {
+        WordTokenizer.tokenize(br, builder);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      Map<String, Map<String, Integer>> graph = builder.graph();
+      Metrics.record(Metrics.Operation.BUILD_GRAPH_SKETCH, start);
+      return graph;
+    }
+
+    /**
+     * Loads a graph saved by {@link GraphFile#save} if {@code filePath} has the
+     * {@link GraphFile#EXTENSION} extension, builds it from every file of a corpus if
+     * {@code filePath} is a directory, a glob or an {@code @list} (see {@link CorpusBuilder}),
+     * and otherwise builds it from the text file. With {@code -Dlab1.offHeap=true} a single file
+     * or snapshot is kept in direct memory, and {@code -Dlab1.verifyChecksum=true} checks a
+     * snapshot's checksum before using it; with {@code -Dlab1.minEdgeCount=n} a single file is
+     * built approximately, keeping only edges seen at least n times (see
+     * {@link SketchGraphBuilder.Options#fromSystemProperties}).
+     */
+    public static CompactGraph loadGraph(String filePath) {
+      long start = Metrics.start();
+      boolean offHeap = Boolean.getBoolean("lab1.offHeap");
+      SketchGraphBuilder.Options sketch = SketchGraphBuilder.Options.fromSystemProperties();
+      CompactGraph graph;
+      if (CorpusBuilder.isCorpus(filePath)) {
+        try {
+          graph = CorpusBuilder.build(filePath, CorpusBuilder.printTo(System.out)).graph();
+        } catch (IOException e) {
+          e.printStackTrace();
+          graph = CompactGraph.from(new HashMap<>());
+        }
+      } else if (filePath.endsWith(GraphFile.EXTENSION)) {
+        try {
+          graph = GraphFile.load(Paths.get(filePath),
+                  Boolean.getBoolean("lab1.verifyChecksum"), offHeap);
+        } catch (IOException e) {
+          e.printStackTrace();
+          graph = CompactGraph.from(new HashMap<>());
+        }
+      } else if (sketch != null) {
+        graph = CompactGraph.from(buildGraphApproximate(filePath, sketch));
+      } else if (offHeap) {
+        graph = buildGraphOffHeap(filePath);
+      } else {
+        graph = CompactGraph.from(buildGraphStreaming(filePath));
+      }
+      Metrics.graphLoaded(graph);
+      Metrics.record(Metrics.Operation.LOAD_GRAPH, start);
       return graph;
     }
 
     public static void showDirectedGraph(Map<String, Map<String, Integer>> graph) {
+      long start = Metrics.start();
       // 打印有向图
       for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
         String node = entry.getKey(); // 获取键
@@ -206,25 +382,71 @@ public class Main {
           System.out.println(node);
         }
       }
+      Metrics.record(Metrics.Operation.SHOW_DIRECTED_GRAPH, start);
     }
 
 
+    public static void showDirectedGraph(CompactGraph graph) {
+      long start = Metrics.start();
+      // 打印有向图
+      for (int node = 0; node < graph.nodeCount(); node++) {
+        if (graph.outDegree(node) > 0) {
+          System.out.print(graph.word(node) + "->");
+          for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+            System.out.print(graph.word(graph.target(e)) + "(" + graph.weight(e) + ") ");
+          }
+          System.out.println();
+        } else {
+          // 如果没有邻居节点，只打印节点本身
+          System.out.println(graph.word(node));
+        }
+      }
+      Metrics.record(Metrics.Operation.SHOW_DIRECTED_GRAPH, start);
+    }
+
+    /**
+     * Converts {@code graph} on every call, in O(V + E); see {@link Graph}.
+     */
     public static String generateDotGraph(Map<String, Map<String, Integer>> graph) {
+      return generateDotGraph(CompactGraph.from(graph));
+    }
+
+    public static String generateDotGraph(CompactGraph graph) {
       // 生成Dot语言描述的有向图
-      StringBuilder dotGraphBuilder = new StringBuilder();
-      dotGraphBuilder.append("digraph G {\n");
-      for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
-        String node = entry.getKey(); // 获取当前节点
-        Map<String, Integer> neighbors = entry.getValue(); // 获取当前节点的邻接节点映射
-        for (Map.Entry<String, Integer> neighborEntry : neighbors.entrySet()) {
-          String neighbor = neighborEntry.getKey(); // 获取邻接节点
-          Integer weight = neighborEntry.getValue(); // 获取边的权重
-          dotGraphBuilder.append(node + " -> " + neighbor + " [label=" + weight + "];\n");
-        }
+      return generateDot(graph, DotWriter.Options.all());
+    }
+
+    private static String generateDot(CompactGraph graph, DotWriter.Options options) {
+      StringWriter dotGraph = new StringWriter();
+      try {
+        DotWriter.write(graph, options, dotGraph);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e); // StringWriter 不会抛出 IOException
+      }
+      return dotGraph.toString();
+    }
+
+    /**
+     * Streams the DOT text of {@code graph} to {@code dotFilePath} and starts rendering it to
+     * {@code imageFilePath} in the background; a message is printed once the image is ready.
+     */
+    public static void renderDotAsync(CompactGraph graph, DotWriter.Options options,
+                                      String dotFilePath, String imageFilePath) {
+      try {
+        DotWriter.write(graph, options, Paths.get(dotFilePath));
+      } catch (IOException e) {
+        e.printStackTrace();
+        return;
       }
-      // 读取文件并解析出有向图的边和节点z
-      dotGraphBuilder.append("}");
-      return dotGraphBuilder.toString();
+      System.out.println("Rendering graph visualization to: " + imageFilePath);
+      DotWriter.renderAsync(Paths.get(dotFilePath), Paths.get(imageFilePath))
+              .whenComplete((image, error) -> {
+                if (error != null) {
+                  System.err.println("Graph visualization failed: " + error.getMessage());
+                } else {
+                  System.out.println("Graph visualization saved as: " + image);
+                }
+              });
     }
 
     // 将字符串表示的有向图保存到dot文件
@@ -278,197 +500,289 @@ public class Main {
       }
     }
 
-    public static String generateNewText(String text, Map<String, Map<String, Integer>> graph) {
-      if (text == null || text.trim().isEmpty()) {
-        return text; // 处理空文本情况
-      }
-      SecureRandom rand = new SecureRandom();
+    public static String queryBridgeWords(String word1, String word2, CompactGraph graph) {
+      return queryBridgeWords(word1, word2, BridgeWords.direct(graph));
+    }
 
-      String[] words = text.replaceAll("[^a-zA-Z\\s]", " ").split("\\s+");
-      ;
-      if (words.length == 1) {
-        return text; // 处理只有一个单词的情况
+    public static String queryBridgeWords(String word1, String word2, BridgeWords bridgeWords) {
+      long start = Metrics.start();
+      try {
+        CompactGraph graph = bridgeWords.graph();
+        int from = graph.idOf(word1);
+        int to = graph.idOf(word2);
+        // 检查word1和word2是否存在于图中
+        if (from < 0 || to < 0) {
+          return "No word1 or word2 in the graph!";
+        }
+
+        // 查找桥接词
+        int[] bridges = bridgeWords.bridges(from, to);
+        if (bridges.length == 0) {
+          return "No bridge words from \"" + word1 + "\" to \"" + word2 + "\"!";
+        }
+        StringBuilder result = new StringBuilder();
+        result.append("The bridge words from \"").append(word1).append("\" to \"").append(word2)
+                .append("\" are: ");
+        for (int i = 0; i < bridges.length; i++) {
+          if (i > 0) {
+            result.append(", ");
+          }
+          result.append(graph.word(bridges[i]));
+        }
+        result.append(".");
+        return result.toString();
+      } finally {
+        Metrics.record(Metrics.Operation.QUERY_BRIDGE_WORDS, start);
       }
+    }
 
-      StringBuilder modifiedText = new StringBuilder();
+    /**
+     * Converts {@code graph} on every call, in O(V + E); see {@link Graph}.
+     */
+    public static String generateNewText(String text, Map<String, Map<String, Integer>> graph) {
+      return generateNewText(text, CompactGraph.from(graph));
+    }
 
-      for (int i = 0; i < words.length - 1; i++) {
-        modifiedText.append(words[i]).append(" ");
-        String bridgeWordResult = queryBridgeWords(words[i], words[i + 1], graph);
+    public static String generateNewText(String text, CompactGraph graph) {
+      return generateNewText(text, BridgeWords.direct(graph));
+    }
 
-        // 检查桥接词的格式
-        if (bridgeWordResult.startsWith("The bridge words")) {
-          // 提取桥接词部分
-          String bridgeWords = bridgeWordResult.substring(bridgeWordResult.indexOf(':') + 2,
-                  bridgeWordResult.length() - 1);
-          String[] bridgeWordsArray = bridgeWords.split(", ");
-          String selectedBridgeWord = bridgeWordsArray[rand.nextInt(bridgeWordsArray.length)];
-          modifiedText.append(selectedBridgeWord).append(" ");
+    /**
+     * Inserts a random bridge word between every adjacent pair of words of {@code text} that has
+     * one; a text with fewer than two words is returned unchanged. See {@link TextRewriter}.
+     */
+    public static String generateNewText(String text, BridgeWords bridgeWords) {
+      long start = Metrics.start();
+      try {
+        if (text == null) {
+          return null;
         }
+        return TextRewriter.rewrite(text, bridgeWords);
+      } finally {
+        Metrics.record(Metrics.Operation.GENERATE_NEW_TEXT, start);
       }
-      modifiedText.append(words[words.length - 1]);
-
-      return modifiedText.toString();
     }
 
+    /**
+     * Converts {@code graph} on every call, in O(V + E); see {@link Graph}.
+     */
     public static String calcShortestPathSingleWord(String word,
                                                     Map<String, Map<String, Integer>> graph) {
-      if (!graph.containsKey(word)) {
-        return "The word is not in the graph!";
-      }
+      return calcShortestPathSingleWord(word, CompactGraph.from(graph));
+    }
 
-      // 遍历图中的所有单词
-      StringBuilder result = new StringBuilder();
-      for (String targetWord : graph.keySet()) {
-        if (!targetWord.equals(word)) {
-          // 调用现有的 calcShortestPath 方法计算单源最短路径
-          String shortestPath = calcShortestPath(word, targetWord, graph);
-          result.append(shortestPath).append("\n");
-        }
+    public static String calcShortestPathSingleWord(String word, CompactGraph graph) {
+      long start = Metrics.start();
+      String paths = shortestPathsFrom(word, graph).collect(Collectors.joining("\n"));
+      Metrics.record(Metrics.Operation.CALC_SHORTEST_PATH_SINGLE_WORD, start);
+      return paths;
+    }
+
+    /**
+     * Lazily formats the shortest path from {@code word} to every other word, one element per
+     * target in the format of {@link #calcShortestPath}. All paths come from a single Dijkstra
+     * run, and each element is only built when the stream reaches it.
+     */
+    public static Stream<String> shortestPathsFrom(String word, CompactGraph graph) {
+      int source = graph.idOf(word);
+      if (source < 0) {
+        return Stream.of("The word is not in the graph!");
       }
+      return shortestPathsFrom(ShortestPathTree.compute(graph, source));
+    }
+
+    /**
+     * Lazily formats the paths from the source of {@code tree} to every other word.
+     */
+    static Stream<String> shortestPathsFrom(ShortestPathTree tree) {
+      return IntStream.range(0, tree.graph().nodeCount())
+              .filter(target -> target != tree.source())
+              .mapToObj(target -> formatShortestPath(tree, target));
+    }
 
-      // 移除最后一个换行符
-      if (result.length() > 0) {
-        result.setLength(result.length() - 1);
+    /**
+     * Formats the path to {@code target} like {@link #calcShortestPath} does.
+     */
+    static String formatShortestPath(ShortestPathTree tree, int target) {
+      String word1 = tree.graph().word(tree.source());
+      String word2 = tree.graph().word(target);
+      if (!tree.isReachable(target)) {
+        return "No path from \"" + word1 + "\" to \"" + word2 + "\"!";
       }
+      return formatPath(word1, word2, tree.path(target), tree.distance(target));
+    }
 
-      return result.toString();
+    private static String formatPath(String word1, String word2, List<String> path, int length) {
+      return "The shortest path from \"" + word1 + "\" to \"" + word2 + "\" is:\n"
+              + String.join(" -> ", path)
+              + "\nPath length: " + length;
     }
 
+    /**
+     * Converts {@code graph} on every call, in O(V + E); see {@link Graph}.
+     */
     public static String calcShortestPath(String word1, String word2,
                                           Map<String, Map<String, Integer>> graph) {
-      if (!graph.containsKey(word1) || !graph.containsKey(word2)) {
-        return "One or both words are not in the graph!";
-      }
-      /*
-      distances: 存储从起点到每个节点的最短距离。
-      previousNodes: 存储每个节点的前一个节点，用于构建路径。
-      nodes: 优先队列，用于选择具有最小距离的节点进行扩展。
-      visited: 记录已访问的节点，避免重复访问。
-      * */
-      Map<String, Integer> distances = new HashMap<>();
-      Map<String, String> previousNodes = new HashMap<>();
-      PriorityQueue<String> nodes = new PriorityQueue<>(Comparator.comparingInt(distances::get));
-      Set<String> visited = new HashSet<>();
-
-      for (String node : graph.keySet()) {
-        if (node.equals(word1)) {
-          distances.put(node, 0);
-        } else {
-          distances.put(node, Integer.MAX_VALUE);
-        }
-        nodes.add(node);
-      }
-
-      while (!nodes.isEmpty()) {
-        String closestNode = nodes.poll();
-        visited.add(closestNode);
+      return calcShortestPath(word1, word2, CompactGraph.from(graph));
+    }
 
-        if (distances.get(closestNode) == Integer.MAX_VALUE) {
-          break;
+    public static String calcShortestPath(String word1, String word2, CompactGraph graph) {
+      long start = Metrics.start();
+      try {
+        int source = graph.idOf(word1);
+        int target = graph.idOf(word2);
+        if (source < 0 || target < 0) {
+          return "One or both words are not in the graph!";
         }
-        visited.add(closestNode);
-        Map<String, Integer> neighbors = graph.get(closestNode);
-        for (Map.Entry<String, Integer> neighbor : neighbors.entrySet()) {
-          if (visited.contains(neighbor.getKey())) {
-            continue;
-          }
-
-          int newDist = distances.get(closestNode) + neighbor.getValue();
-          //System.out.println(closestNode + "->" + neighbor.getKey() + " " + newDist);
-          if (newDist < distances.get(neighbor.getKey())) {
-            distances.put(neighbor.getKey(), newDist);
-            previousNodes.put(neighbor.getKey(), closestNode);
-            nodes.remove(neighbor.getKey());
-            nodes.add(neighbor.getKey());
-          }
+        // 双向 Dijkstra，两侧搜索相遇后即可停止
+        BidirectionalDijkstra.Path path = BidirectionalDijkstra.find(graph, source, target);
+        if (path == null) {
+          return "No path from \"" + word1 + "\" to \"" + word2 + "\"!";
         }
+        return formatPath(word1, word2, path.words(), path.length());
+      } finally {
+        Metrics.record(Metrics.Operation.CALC_SHORTEST_PATH, start);
       }
+    }
 
-      if (distances.get(word2) == Integer.MAX_VALUE) {
-        return "No path from \"" + word1 + "\" to \"" + word2 + "\"!";
+    /**
+     * Lists up to {@code k} loopless paths from {@code word1} to {@code word2}, shortest first,
+     * found by {@link KShortestPaths}.
+     */
+    public static String calcKShortestPaths(String word1, String word2, int k,
+                                            CompactGraph graph) {
+      int source = graph.idOf(word1);
+      int target = graph.idOf(word2);
+      if (source < 0 || target < 0) {
+        return "One or both words are not in the graph!";
       }
+      return formatPaths(word1, word2, KShortestPaths.find(graph, source, target, k));
+    }
 
-      List<String> path = new ArrayList<>();
-      for (String at = word2; at != null; at = previousNodes.get(at)) {
-        path.add(at);
+    /**
+     * Lists every shortest path from {@code word1} to {@code word2}, up to {@code limit} of them.
+     */
+    public static String calcAllShortestPaths(String word1, String word2, int limit,
+                                              CompactGraph graph) {
+      int source = graph.idOf(word1);
+      int target = graph.idOf(word2);
+      if (source < 0 || target < 0) {
+        return "One or both words are not in the graph!";
+      }
+      return formatPaths(word1, word2, KShortestPaths.allShortest(graph, source, target, limit));
+    }
+
+    private static String formatPaths(String word1, String word2,
+                                      List<BidirectionalDijkstra.Path> paths) {
+      if (paths.isEmpty()) {
+        return "No path from \"" + word1 + "\" to \"" + word2 + "\"!";
       }
-      Collections.reverse(path);
       StringBuilder result = new StringBuilder();
-      result.append("The shortest path from \"").append(word1).append("\" to \"").append(word2)
-              .append("\" is:\n");
-      result.append(String.join(" -> ", path));
-      result.append("\nPath length: ").append(distances.get(word2));
+      result.append("The ").append(paths.size()).append(" shortest paths from \"").append(word1)
+              .append("\" to \"").append(word2).append("\" are:");
+      for (int i = 0; i < paths.size(); i++) {
+        result.append('\n').append(i + 1).append(". ")
+                .append(String.join(" -> ", paths.get(i).words()))
+                .append(" (length ").append(paths.get(i).length()).append(')');
+      }
       return result.toString();
     }
 
-    public static String generateDotGraphWithHighlight(Map<String, Map<String, Integer>> graph,
-                                                       List<String> path) {
-      StringBuilder dotGraphBuilder = new StringBuilder();
-      dotGraphBuilder.append("digraph G {\n");
-
-      Set<String> pathEdges = new HashSet<>();
-      for (int i = 0; i < path.size() - 1; i++) {
-        pathEdges.add(path.get(i) + "->" + path.get(i + 1));
+    /**
+     * Lists the {@code k} words with the highest PageRank, with their in- and out-degree. The
+     * rankings are computed once per graph by {@link CompactGraph#analytics()}.
+     */
+    public static String rankWords(int k, CompactGraph graph) {
+      GraphAnalytics analytics = graph.analytics();
+      int[] top = analytics.topByPageRank(k);
+      if (top.length == 0) {
+        return "Graph is empty!";
+      }
+      StringBuilder result = new StringBuilder("Top ").append(top.length)
+              .append(" words by PageRank:");
+      for (int i = 0; i < top.length; i++) {
+        int node = top[i];
+        result.append('\n').append(i + 1).append(". ").append(graph.word(node))
+                .append(String.format(" (%.6f, in %d, out %d)", analytics.pageRank(node),
+                        graph.inDegree(node), graph.outDegree(node)));
       }
+      return result.toString();
+    }
 
-      for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
-        String node = entry.getKey();
-        Map<String, Integer> neighbors = entry.getValue();
-        for (Map.Entry<String, Integer> neighborEntry : neighbors.entrySet()) {
-          String neighbor = neighborEntry.getKey();
-          String edge = node + "->" + neighbor;
-          dotGraphBuilder.append(node).append(" -> ").append(neighbor);
-          if (pathEdges.contains(edge)) {
-            dotGraphBuilder.append(" [label=").append(neighborEntry.getValue())
-                    .append(", color=red, penwidth=2.0]");
-          } else {
-            dotGraphBuilder.append(" [label=").append(neighborEntry.getValue()).append("]");
-          }
-          dotGraphBuilder.append(";\n");
-        }
+    /**
+     * Lists the {@code k} most frequent words and the {@code k} heaviest edges.
+     */
+    public static String topFrequent(int k, CompactGraph graph) {
+      GraphAnalytics analytics = graph.analytics();
+      int[] words = analytics.topByFrequency(k);
+      if (words.length == 0) {
+        return "Graph is empty!";
+      }
+      StringBuilder result = new StringBuilder("Top ").append(words.length)
+              .append(" words by frequency:");
+      for (int i = 0; i < words.length; i++) {
+        result.append('\n').append(i + 1).append(". ").append(graph.word(words[i]))
+                .append(" (").append(analytics.frequency(words[i])).append(')');
       }
+      int[] edges = analytics.topEdges(k);
+      CompactGraph dense = graph.dense(); // 排行榜中的边编号属于紧凑形式
+      result.append("\nTop ").append(edges.length).append(" edges by weight:");
+      for (int i = 0; i < edges.length; i++) {
+        int edge = edges[i];
+        result.append('\n').append(i + 1).append(". ").append(dense.word(dense.source(edge)))
+                .append(" -> ").append(dense.word(dense.target(edge)))
+                .append(" (").append(dense.weight(edge)).append(')');
+      }
+      return result.toString();
+    }
 
-      dotGraphBuilder.append("}");
-      return dotGraphBuilder.toString();
+    /**
+     * Converts {@code graph} on every call, in O(V + E); see {@link Graph}.
+     */
+    public static String generateDotGraphWithHighlight(Map<String, Map<String, Integer>> graph,
+                                                       List<String> path) {
+      return generateDotGraphWithHighlight(CompactGraph.from(graph), path);
     }
 
-    //    String calcShortestPath(String word1, String word2){
-    //
-    //    }
-    //
+    public static String generateDotGraphWithHighlight(CompactGraph graph, List<String> path) {
+      return generateDot(graph, DotWriter.Options.all().highlight(path));
+    }
+
+    /**
+     * Converts {@code graph} on every call, in O(V + E); see {@link Graph}.
+     */
     public static String randomWalk(Map<String, Map<String, Integer>> graph) {
-      if (graph.isEmpty()) {
+      return randomWalk(CompactGraph.from(graph));
+    }
+
+    public static String randomWalk(CompactGraph graph) {
+      if (graph.nodeCount() == 0) {
         return "Graph is empty!";
       }
 
       SecureRandom rand = new SecureRandom();
-      List<String> nodes = new ArrayList<>(graph.keySet());
-      String startNode = nodes.get(rand.nextInt(nodes.size()));
+      int currentNode = rand.nextInt(graph.nodeCount());
 
       StringBuilder walkPath = new StringBuilder();
-      Set<String> visitedEdges = new HashSet<>();
-      String currentNode = startNode;
+      Set<Long> visitedEdges = new HashSet<>();
 
       Scanner scanner = new Scanner(System.in, Charset.forName("UTF-8"));
 
       while (true) {
-        walkPath.append(currentNode).append(" ");
-        Map<String, Integer> neighbors = graph.get(currentNode);
+        walkPath.append(graph.word(currentNode)).append(" ");
+        int degree = graph.outDegree(currentNode);
 
-        if (neighbors == null || neighbors.isEmpty()) {
+        if (degree == 0) {
           break;
         }
 
-        List<String> neighborList = new ArrayList<>(neighbors.keySet());
-        String nextNode = neighborList.get(rand.nextInt(neighborList.size()));
-        String edge = currentNode + "->" + nextNode;
+        int edge = graph.edgeStart(currentNode) + rand.nextInt(degree);
+        int nextNode = graph.target(edge);
 
-        if (visitedEdges.contains(edge)) {
+        if (!visitedEdges.add(edgeKey(currentNode, nextNode))) {
           break;
         }
 
-        visitedEdges.add(edge);
         currentNode = nextNode;
         String userInput = scanner.nextLine();
         if ("stop".equalsIgnoreCase(userInput)) {
@@ -478,10 +792,43 @@ public class Main {
       return walkPath.toString().trim();
     }
 
+    /**
+     * Walks from a random start node until a node without successors or an already used edge is
+     * reached. Unlike {@link #randomWalk(CompactGraph)} it never reads stdin, so it is safe to
+     * call from any thread with a thread-confined {@code rand}.
+     */
+    public static String randomWalk(CompactGraph graph, RandomGenerator rand) {
+      long start = Metrics.start();
+      try {
+        if (graph.nodeCount() == 0) {
+          return "Graph is empty!";
+        }
+        int currentNode = rand.nextInt(graph.nodeCount());
+        StringBuilder walkPath = new StringBuilder(graph.word(currentNode));
+        Set<Long> visitedEdges = new HashSet<>();
+        while (graph.outDegree(currentNode) > 0) {
+          int edge = graph.edgeStart(currentNode) + rand.nextInt(graph.outDegree(currentNode));
+          int nextNode = graph.target(edge);
+          if (!visitedEdges.add(edgeKey(currentNode, nextNode))) {
+            break;
+          }
+          currentNode = nextNode;
+          walkPath.append(' ').append(graph.word(currentNode));
+        }
+        return walkPath.toString();
+      } finally {
+        Metrics.record(Metrics.Operation.RANDOM_WALK, start);
+      }
+    }
+
     public static void writeToFile(String content, String fileName) throws IOException {
       try (FileWriter writer = new FileWriter(fileName, StandardCharsets.UTF_8)) {
         writer.write(content);
       }
     }
+
+    static long edgeKey(int from, int to) {
+      return ((long) from << 32) | (to & 0xFFFFFFFFL);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,369 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Process-wide latency histograms, counters and gauges for the {@link Main.Graph} operations.
+ *
+ * <p>Recording is off unless the JVM is started with {@code -Dlab1.metrics=true}. The switch is a
+ * static final constant, so when it is off the JIT folds every recording call, including its
+ * {@link System#nanoTime} read, down to nothing. When it is on, each operation records its
+ * latency into a {@link Histogram}, every Dijkstra run records how many nodes it settled and
+ * edges it relaxed, the tokenizer records how much input it consumed, and the graph gauges
+ * follow the most recently loaded graph. The values are published as the
+ * {@code lab1:type=Metrics} MBean and as plain text by {@link #dump}.
+ */
+final class Metrics {
+
+  static final boolean ENABLED = Boolean.getBoolean("lab1.metrics");
+
+  static final String OBJECT_NAME = "lab1:type=Metrics";
+
+  /**
+   * The timed operations; the label is the name used in the dump and in MBean attributes.
+   */
+  enum Operation {
+    BUILD_GRAPH("buildGraph"),
+    BUILD_GRAPH_STREAMING("buildGraphStreaming"),
+    BUILD_GRAPH_PARALLEL("buildGraphParallel"),
+    BUILD_GRAPH_OFF_HEAP("buildGraphOffHeap"),
+    BUILD_GRAPH_CORPUS("buildGraphCorpus"),
+    BUILD_GRAPH_SKETCH("buildGraphSketch"),
+    LOAD_GRAPH("loadGraph"),
+    SHOW_DIRECTED_GRAPH("showDirectedGraph"),
+    WRITE_DOT("writeDot"),
+    QUERY_BRIDGE_WORDS("queryBridgeWords"),
+    GENERATE_NEW_TEXT("generateNewText"),
+    CALC_SHORTEST_PATH("calcShortestPath"),
+    CALC_SHORTEST_PATH_SINGLE_WORD("calcShortestPathSingleWord"),
+    DIJKSTRA("dijkstra"),
+    PAGE_RANK("pageRank"),
+    RANDOM_WALK("randomWalk");
+
+    final String label;
+
+    Operation(String label) {
+      this.label = label;
+    }
+  }
+
+  // 未启用时不分配直方图
+  private static final Histogram[] LATENCY =
+          new Histogram[ENABLED ? Operation.values().length : 0];
+  private static final Histogram SETTLED = ENABLED ? new Histogram() : null;
+  private static final Histogram RELAXED = ENABLED ? new Histogram() : null;
+  private static final LongAdder TOKENIZED = new LongAdder();
+  private static final LongAdder TOKENIZE_NANOS = new LongAdder();
+  private static volatile CompactGraph graph;
+
+  static {
+    for (int i = 0; i < LATENCY.length; i++) {
+      LATENCY[i] = new Histogram();
+    }
+  }
+
+  private Metrics() {
+  }
+
+  /**
+   * Returns the start time to pass to {@link #record}, or 0 when metrics are off.
+   */
+  static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  static void record(Operation operation, long start) {
+    if (ENABLED) {
+      LATENCY[operation.ordinal()].record(System.nanoTime() - start);
+    }
+  }
+
+  static void dijkstra(long nodesSettled, long edgesRelaxed) {
+    if (ENABLED) {
+      SETTLED.record(nodesSettled);
+      RELAXED.record(edgesRelaxed);
+    }
+  }
+
+  /**
+   * Records {@code amount} bytes (characters, for {@link java.io.Reader} input) tokenized in
+   * {@code nanos}, including the time spent by the word sink.
+   */
+  static void tokenized(long amount, long nanos) {
+    if (ENABLED) {
+      TOKENIZED.add(amount);
+      TOKENIZE_NANOS.add(nanos);
+    }
+  }
+
+  /**
+   * Points the graph gauges at {@code loaded}.
+   */
+  static void graphLoaded(CompactGraph loaded) {
+    if (ENABLED) {
+      graph = loaded;
+    }
+  }
+
+  /**
+   * Registers the metrics MBean with the platform MBean server, once; does nothing when metrics
+   * are off.
+   */
+  static synchronized void registerMBean() {
+    if (!ENABLED) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MetricsMBean(), name);
+      }
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
+  static String dump() {
+    StringWriter out = new StringWriter();
+    try {
+      dump(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // StringWriter 不会抛出 IOException
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes every metric as plain text: one line per histogram with its count, mean, median,
+   * 90th and 99th percentile and maximum (latencies in microseconds), then the gauges.
+   */
+  static void dump(Writer out) throws IOException {
+    if (!ENABLED) {
+      out.write("Metrics are disabled; start the JVM with -Dlab1.metrics=true\n");
+      return;
+    }
+    out.write(String.format(Locale.ROOT, "%-30s %10s %12s %12s %12s %12s %12s%n",
+            "latency (us)", "count", "mean", "p50", "p90", "p99", "max"));
+    for (Operation operation : Operation.values()) {
+      writeHistogram(operation.label, LATENCY[operation.ordinal()], 1e3, out);
+    }
+    out.write(String.format(Locale.ROOT, "%-30s %10s %12s %12s %12s %12s %12s%n",
+            "per Dijkstra run", "count", "mean", "p50", "p90", "p99", "max"));
+    writeHistogram("nodesSettled", SETTLED, 1, out);
+    writeHistogram("edgesRelaxed", RELAXED, 1, out);
+    for (Map.Entry<String, Supplier<Object>> gauge : gauges().entrySet()) {
+      out.write(String.format(Locale.ROOT, "%-30s %s%n", gauge.getKey(), gauge.getValue().get()));
+    }
+  }
+
+  private static void writeHistogram(String label, Histogram histogram, double unit, Writer out)
+          throws IOException {
+    out.write(String.format(Locale.ROOT, "%-30s %10d %12.1f %12.1f %12.1f %12.1f %12.1f%n",
+            label, histogram.count(), histogram.mean() / unit,
+            histogram.valueAtPercentile(50) / unit, histogram.valueAtPercentile(90) / unit,
+            histogram.valueAtPercentile(99) / unit, histogram.max() / unit));
+  }
+
+  private static Map<String, Supplier<Object>> gauges() {
+    Map<String, Supplier<Object>> gauges = new LinkedHashMap<>();
+    gauges.put("graphNodes", graphGauge(CompactGraph::nodeCount));
+    gauges.put("graphEdges", graphGauge(CompactGraph::edgeCount));
+    gauges.put("graphHeapBytes", graphGauge(CompactGraph::estimatedBytes));
+    gauges.put("graphOffHeapBytes", graphGauge(CompactGraph::offHeapBytes));
+    gauges.put("tokenizedBytes", TOKENIZED::sum);
+    gauges.put("tokenizerBytesPerSecond", () -> {
+      long nanos = TOKENIZE_NANOS.sum();
+      return nanos == 0 ? 0L : (long) (TOKENIZED.sum() * 1e9 / nanos);
+    });
+    return gauges;
+  }
+
+  private static Supplier<Object> graphGauge(ToLongFunction<CompactGraph> value) {
+    return () -> {
+      CompactGraph current = graph;
+      return current == null ? 0L : value.applyAsLong(current);
+    };
+  }
+
+  /**
+   * Concurrent histogram of non-negative longs with log-linear buckets, in the manner of
+   * HdrHistogram: values below 128 are counted exactly, larger ones in buckets whose width is at
+   * most 1/64 of their lower bound, so reported percentiles are within about 1.6% of the truth.
+   */
+  static final class Histogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT >> 1;
+    private static final int BUCKETS = SUB_COUNT + (Long.SIZE - 1 - SUB_BITS) * HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long value) {
+      long v = Math.max(0, value);
+      counts.incrementAndGet(index(v));
+      count.increment();
+      sum.add(v);
+      max.accumulate(v);
+    }
+
+    long count() {
+      return count.sum();
+    }
+
+    double mean() {
+      long n = count.sum();
+      return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    long max() {
+      return max.get();
+    }
+
+    /**
+     * Returns the smallest recorded value (to bucket precision) that at least
+     * {@code percentile} percent of the recorded values do not exceed, or 0 if nothing was
+     * recorded.
+     */
+    long valueAtPercentile(double percentile) {
+      long[] snapshot = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        snapshot[i] = counts.get(i);
+        total += snapshot[i];
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += snapshot[i];
+        if (seen >= rank) {
+          return Math.min(highestValue(i), max());
+        }
+      }
+      return 0;
+    }
+
+    static int index(long value) {
+      if (value < SUB_COUNT) {
+        return (int) value;
+      }
+      // 保留最高的 SUB_BITS 位
+      int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS;
+      return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }
+
+    /**
+     * Returns the largest value counted in bucket {@code index}.
+     */
+    static long highestValue(int index) {
+      if (index < SUB_COUNT) {
+        return index;
+      }
+      int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+      long mantissa = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+      return ((mantissa + 1) << shift) - 1;
+    }
+  }
+
+  /**
+   * Read-only MBean with the count, mean, p50, p99 and maximum of every latency histogram (in
+   * microseconds), the Dijkstra histograms, the gauges and the full text dump.
+   */
+  private static final class MetricsMBean implements DynamicMBean {
+    private final Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+    private final MBeanInfo info;
+
+    MetricsMBean() {
+      for (Operation operation : Operation.values()) {
+        addHistogram(operation.label, LATENCY[operation.ordinal()], 1e3, "Micros");
+      }
+      addHistogram("dijkstraNodesSettled", SETTLED, 1, "");
+      addHistogram("dijkstraEdgesRelaxed", RELAXED, 1, "");
+      attributes.putAll(gauges());
+      attributes.put("Dump", Metrics::dump);
+      List<MBeanAttributeInfo> infos = new ArrayList<>();
+      for (Map.Entry<String, Supplier<Object>> attribute : attributes.entrySet()) {
+        String type = attribute.getValue().get().getClass().getName();
+        infos.add(new MBeanAttributeInfo(attribute.getKey(), type, attribute.getKey(),
+                true, false, false));
+      }
+      info = new MBeanInfo(Metrics.class.getName(), "Word graph operation metrics",
+              infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    private void addHistogram(String label, Histogram histogram, double unit, String suffix) {
+      attributes.put(label + "Count", histogram::count);
+      attributes.put(label + "Mean" + suffix, () -> histogram.mean() / unit);
+      attributes.put(label + "P50" + suffix, () -> histogram.valueAtPercentile(50) / unit);
+      attributes.put(label + "P99" + suffix, () -> histogram.valueAtPercentile(99) / unit);
+      attributes.put(label + "Max" + suffix, () -> histogram.max() / unit);
+    }
+
+    @Override
+    public Object getAttribute(String name) throws AttributeNotFoundException {
+      Supplier<Object> attribute = attributes.get(name);
+      if (attribute == null) {
+        throw new AttributeNotFoundException(name);
+      }
+      return attribute.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+      AttributeList list = new AttributeList();
+      for (String name : names) {
+        Supplier<Object> attribute = attributes.get(name);
+        if (attribute != null) {
+          list.add(new Attribute(name, attribute.get()));
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException("Read-only attribute: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList list) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String action, Object[] params, String[] signature)
+            throws ReflectionException {
+      throw new ReflectionException(new NoSuchMethodException(action));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      return info;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Builds a {@link CompactGraph} whose words, edges and weights all live in direct memory, for
+ * corpora whose bigrams would not fit in the heap as nested hash maps.
+ *
+ * <p>Words get ids in order of first appearance from an {@link OffHeapWords} dictionary. Edge
+ * weights are counted in an open-addressing table in direct memory keyed by
+ * {@link Main.Graph#edgeKey}, and {@link #build} turns that table into CSR buffers, also in
+ * direct memory. The heap only ever holds the word being added, so garbage collection stays
+ * cheap however large the graph grows. The resulting graph has the same words and edges as
+ * {@code CompactGraph.from(Main.Graph.buildGraph(file))}, though ids and edge order may differ.
+ */
+final class OffHeapGraphBuilder implements WordTokenizer.WordSink {
+
+  private static final long EMPTY = -1L; // 源节点为 -1 的键不会出现
+  private static final int INITIAL_WORDS = 1 << 12;
+  private static final int INITIAL_EDGE_SLOTS = 1 << 14;
+  private static final int MAX_EDGE_SLOTS = 1 << 27; // 单个 LongBuffer 不超过 1GB
+
+  private final OffHeapWords words = new OffHeapWords(INITIAL_WORDS);
+  private LongBuffer keys;
+  private IntBuffer weights;
+  private int edgeCount;
+  private int previous = -1;
+
+  OffHeapGraphBuilder() {
+    keys = emptyKeys(INITIAL_EDGE_SLOTS);
+    weights = CompactGraph.directInts(INITIAL_EDGE_SLOTS);
+  }
+
+  @Override
+  public void accept(String word) {
+    int id = words.add(word);
+    if (previous >= 0) {
+      addEdge(Main.Graph.edgeKey(previous, id));
+    }
+    previous = id;
+  }
+
+  /**
+   * Converts the counted edges to a graph. The builder must not be used afterwards.
+   */
+  CompactGraph build() {
+    int nodeCount = words.size();
+    IntBuffer offsets = CompactGraph.directInts(nodeCount + 1L);
+    for (int slot = 0; slot < keys.capacity(); slot++) {
+      long key = keys.get(slot);
+      if (key != EMPTY) {
+        int from = (int) (key >>> 32);
+        offsets.put(from + 1, offsets.get(from + 1) + 1);
+      }
+    }
+    for (int node = 0; node < nodeCount; node++) {
+      offsets.put(node + 1, offsets.get(node + 1) + offsets.get(node));
+    }
+    IntBuffer next = CompactGraph.directInts(nodeCount);
+    next.put(0, offsets, 0, nodeCount);
+    IntBuffer targets = CompactGraph.directInts(edgeCount);
+    IntBuffer edgeWeights = CompactGraph.directInts(edgeCount);
+    for (int slot = 0; slot < keys.capacity(); slot++) {
+      long key = keys.get(slot);
+      if (key != EMPTY) {
+        int from = (int) (key >>> 32);
+        int edge = next.get(from);
+        next.put(from, edge + 1);
+        targets.put(edge, (int) key);
+        edgeWeights.put(edge, weights.get(slot));
+      }
+    }
+    // 释放计数表，直接内存随对象一起回收
+    keys = null;
+    weights = null;
+    return CompactGraph.offHeap(words, offsets, targets, edgeWeights);
+  }
+
+  private void addEdge(long key) {
+    int mask = keys.capacity() - 1;
+    int slot = slotOf(key, mask);
+    for (long k; (k = keys.get(slot)) != EMPTY; slot = (slot + 1) & mask) {
+      if (k == key) {
+        weights.put(slot, weights.get(slot) + 1);
+        return;
+      }
+    }
+    keys.put(slot, key);
+    weights.put(slot, 1);
+    edgeCount++;
+    // 装载因子保持在 0.75 以下
+    if (4L * edgeCount > 3L * keys.capacity()) {
+      rehash();
+    }
+  }
+
+  private void rehash() {
+    int capacity = keys.capacity() * 2;
+    if (capacity > MAX_EDGE_SLOTS) {
+      throw new IllegalStateException("Too many distinct edges for the off-heap builder: "
+              + edgeCount);
+    }
+    LongBuffer oldKeys = keys;
+    IntBuffer oldWeights = weights;
+    keys = emptyKeys(capacity);
+    weights = CompactGraph.directInts(capacity);
+    int mask = capacity - 1;
+    for (int old = 0; old < oldKeys.capacity(); old++) {
+      long key = oldKeys.get(old);
+      if (key != EMPTY) {
+        int slot = slotOf(key, mask);
+        while (keys.get(slot) != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys.put(slot, key);
+        weights.put(slot, oldWeights.get(old));
+      }
+    }
+  }
+
+  private static LongBuffer emptyKeys(int capacity) {
+    LongBuffer keys = CompactGraph.directBytes((long) Long.BYTES * capacity).asLongBuffer();
+    for (int slot = 0; slot < capacity; slot++) {
+      keys.put(slot, EMPTY);
+    }
+    return keys;
+  }
+
+  private static int slotOf(long key, int mask) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+}
@@ -0,0 +1,220 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Word dictionary kept outside the Java heap, for {@link OffHeapGraphBuilder} and the off-heap
+ * {@link CompactGraph}.
+ *
+ * <p>Words are stored back to back as UTF-8 in one direct buffer, and an open-addressing hash
+ * table of ids, also in direct memory, maps a word to its id. Every word keeps its
+ * {@link String#hashCode} so the table can grow without decoding the words again. Only
+ * {@link #add} modifies the dictionary; once words stop being added, lookups may run on any
+ * number of threads.
+ *
+ * <p>{@link GraphFile} stores the same four tables, so a saved dictionary can be wrapped again
+ * without decoding or rehashing its words.
+ */
+final class OffHeapWords {
+
+  private ByteBuffer bytes;
+  private IntBuffer starts; // 第 id 个单词的字节区间为 starts[id] .. starts[id + 1]
+  private IntBuffer hashes;
+  private IntBuffer slots; // 开放寻址哈希表，存放 id + 1，0 表示空槽
+  private int size;
+
+  OffHeapWords(int expectedWords) {
+    int capacity = Math.max(16, expectedWords);
+    bytes = CompactGraph.directBytes(8L * capacity);
+    starts = CompactGraph.directInts(capacity + 1L);
+    hashes = CompactGraph.directInts(capacity);
+    slots = CompactGraph.directInts(tableSize(capacity));
+  }
+
+  /**
+   * Wraps tables read back by {@link GraphFile}: {@code bytes} holds the UTF-8 words,
+   * {@code starts} their {@code size + 1} start offsets, {@code hashes} their
+   * {@link String#hashCode}, and {@code slots} a power-of-two table laid out by {@link #slot}.
+   * Nothing is copied, and a wrapped dictionary must not be added to.
+   */
+  OffHeapWords(ByteBuffer bytes, IntBuffer starts, IntBuffer hashes, IntBuffer slots,
+               int size) {
+    this.bytes = bytes;
+    this.starts = starts;
+    this.hashes = hashes;
+    this.slots = slots;
+    this.size = size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the id of {@code word}, or -1 if it was never added.
+   */
+  int idOf(String word) {
+    return idOf(word, 0, word.length(), word.hashCode());
+  }
+
+  /**
+   * Returns the id of the characters {@code start} to {@code end - 1} of {@code text}, whose
+   * {@link String#hashCode} is {@code h}, or -1 if they were never added.
+   */
+  int idOf(CharSequence text, int start, int end, int h) {
+    int mask = slots.capacity() - 1;
+    for (int slot = mix(h) & mask; slots.get(slot) != 0; slot = (slot + 1) & mask) {
+      int id = slots.get(slot) - 1;
+      if (hashes.get(id) == h && matches(id, text, start, end)) {
+        return id;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the id of {@code word}, adding it with the next free id if it is new.
+   */
+  int add(String word) {
+    int h = word.hashCode();
+    int mask = slots.capacity() - 1;
+    int slot = mix(h) & mask;
+    for (; slots.get(slot) != 0; slot = (slot + 1) & mask) {
+      int id = slots.get(slot) - 1;
+      if (hashes.get(id) == h && matches(id, word, 0, word.length())) {
+        return id;
+      }
+    }
+    byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+    int start = starts.get(size);
+    if (bytes.capacity() - start < encoded.length) {
+      bytes = grow(bytes, (long) start + encoded.length);
+    }
+    bytes.put(start, encoded);
+    if (size + 1 == hashes.capacity()) {
+      starts = grow(starts, size + 2L);
+      hashes = grow(hashes, size + 1L);
+    }
+    int id = size++;
+    starts.put(size, start + encoded.length);
+    hashes.put(id, h);
+    slots.put(slot, id + 1);
+    if (2L * size > slots.capacity()) {
+      rehash();
+    }
+    return id;
+  }
+
+  String word(int id) {
+    int start = starts.get(id);
+    byte[] word = new byte[starts.get(id + 1) - start];
+    bytes.get(start, word);
+    return new String(word, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Appends the word of {@code id} to {@code out}, decoding ASCII words without allocating.
+   */
+  void appendTo(int id, StringBuilder out) {
+    int start = starts.get(id);
+    int end = starts.get(id + 1);
+    for (int i = start; i < end; i++) {
+      if (bytes.get(i) < 0) {
+        // 此前都是 ASCII 字节，字节偏移即字符偏移
+        String word = word(id);
+        out.append(word, i - start, word.length());
+        return;
+      }
+      out.append((char) bytes.get(i));
+    }
+  }
+
+  /**
+   * Returns the direct memory held by the dictionary, in bytes.
+   */
+  long offHeapBytes() {
+    return bytes.capacity() + Integer.BYTES
+            * ((long) starts.capacity() + hashes.capacity() + slots.capacity());
+  }
+
+  /**
+   * Compares characters {@code from} to {@code to - 1} of {@code text} with the stored bytes of
+   * {@code id}, without encoding ASCII words.
+   */
+  private boolean matches(int id, CharSequence text, int from, int to) {
+    int start = starts.get(id);
+    int length = starts.get(id + 1) - start;
+    int n = to - from;
+    if (n > length) {
+      return false;
+    }
+    for (int i = 0; i < n; i++) {
+      char c = text.charAt(from + i);
+      if (c >= 0x80) {
+        byte[] encoded = text.subSequence(from, to).toString().getBytes(StandardCharsets.UTF_8);
+        return matchesEncoded(start, length, encoded);
+      }
+      if (bytes.get(start + i) != (byte) c) {
+        return false;
+      }
+    }
+    return n == length;
+  }
+
+  private boolean matchesEncoded(int start, int length, byte[] encoded) {
+    if (encoded.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (bytes.get(start + i) != encoded[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    slots = CompactGraph.directInts(2L * slots.capacity());
+    int mask = slots.capacity() - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = mix(hashes.get(id)) & mask;
+      while (slots.get(slot) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots.put(slot, id + 1);
+    }
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer, long minCapacity) {
+    long capacity = Math.min(2L * buffer.capacity(), Integer.MAX_VALUE);
+    ByteBuffer grown = CompactGraph.directBytes(Math.max(minCapacity, capacity));
+    grown.put(0, buffer, 0, buffer.capacity());
+    return grown;
+  }
+
+  private static IntBuffer grow(IntBuffer buffer, long minCapacity) {
+    long capacity = Math.min(2L * buffer.capacity(), CompactGraph.MAX_DIRECT_INTS);
+    IntBuffer grown = CompactGraph.directInts(Math.max(minCapacity, capacity));
+    grown.put(0, buffer, 0, buffer.capacity());
+    return grown;
+  }
+
+  /**
+   * Returns the number of slots of a table for {@code words} words.
+   */
+  static int tableSize(int words) {
+    return Integer.highestOneBit(Math.max(1, words) * 2 - 1) << 1;
+  }
+
+  /**
+   * Returns the first slot probed for a word whose {@link String#hashCode} is {@code h}, in a
+   * table of {@code tableSize} slots; collisions probe the following slots.
+   */
+  static int slot(int h, int tableSize) {
+    return mix(h) & (tableSize - 1);
+  }
+
+  private static int mix(int h) {
+    return h ^ (h >>> 16);
+  }
+}
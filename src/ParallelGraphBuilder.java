@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds the word graph of a file in parallel.
+ *
+ * <p>The file is memory-mapped and cut into chunks whose boundaries never fall inside a word.
+ * Each chunk is tokenized on a fork-join pool into its own partial graph, and neighbouring
+ * partial graphs are merged pairwise, adding the edge from the last word of the left chunk to the
+ * first word of the right chunk. The result equals the streaming build in the same
+ * {@link WordTokenizer.Mode}, and {@link Main.Graph#buildGraph} in the default ASCII mode.
+ *
+ * <p>In {@link WordTokenizer.Mode#ASCII} mode chunks are tokenized as bytes, which gives the same
+ * words: UTF-8 encodes every non-ASCII character with bytes outside the ASCII range, so they
+ * separate words just like the characters removed by the {@code [^a-zA-Z\s]} replacement. In
+ * {@link WordTokenizer.Mode#UNICODE} mode chunks end at an ASCII separator, which can never be
+ * part of a multi-byte character, and each chunk is decoded and fed to a {@link WordTokenizer}.
+ */
+final class ParallelGraphBuilder {
+
+  private static final long MIN_CHUNK_SIZE = 1 << 20;
+  private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE; // FileChannel.map 的上限
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private ParallelGraphBuilder() {
+  }
+
+  static Map<String, Map<String, Integer>> build(Path file) throws IOException {
+    return build(file, ForkJoinPool.commonPool());
+  }
+
+  static Map<String, Map<String, Integer>> build(Path file, ForkJoinPool pool)
+          throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long chunkSize = Math.max(MIN_CHUNK_SIZE,
+              size / ((long) pool.getParallelism() * CHUNKS_PER_THREAD) + 1);
+      return build(channel, pool, Math.min(chunkSize, MAX_CHUNK_SIZE),
+              WordTokenizer.Mode.DEFAULT);
+    }
+  }
+
+  /**
+   * Builds the graph with chunks of roughly {@code chunkSize} bytes; exposed for tests that need
+   * many chunk seams in a small file.
+   */
+  static Map<String, Map<String, Integer>> build(Path file, ForkJoinPool pool, long chunkSize)
+          throws IOException {
+    return build(file, pool, chunkSize, WordTokenizer.Mode.DEFAULT);
+  }
+
+  /**
+   * Builds the graph with chunks of roughly {@code chunkSize} bytes, splitting words with
+   * {@code mode}.
+   */
+  static Map<String, Map<String, Integer>> build(Path file, ForkJoinPool pool, long chunkSize,
+                                                 WordTokenizer.Mode mode) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return build(channel, pool, chunkSize, mode);
+    }
+  }
+
+  private static Map<String, Map<String, Integer>> build(FileChannel channel, ForkJoinPool pool,
+                                                         long chunkSize, WordTokenizer.Mode mode)
+          throws IOException {
+    long[] bounds = chunkBounds(channel, chunkSize, mode);
+    try {
+      return pool.invoke(new ChunkTask(channel, bounds, mode, 0, bounds.length - 1)).graph;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Splits the file into chunks of about {@code chunkSize} bytes, moving each boundary forward to
+   * the next byte that cannot be part of a word.
+   */
+  private static long[] chunkBounds(FileChannel channel, long chunkSize, WordTokenizer.Mode mode)
+          throws IOException {
+    long size = channel.size();
+    long[] bounds = new long[(int) Math.min(Integer.MAX_VALUE - 1, size / chunkSize + 2)];
+    int count = 0;
+    bounds[count++] = 0;
+    ByteBuffer probe = ByteBuffer.allocate(256);
+    long pos = chunkSize;
+    while (pos < size) {
+      pos = nextSeparator(channel, pos, size, probe, mode);
+      if (pos >= size) {
+        break;
+      }
+      bounds[count++] = pos;
+      pos += chunkSize;
+    }
+    bounds[count++] = size;
+    return Arrays.copyOf(bounds, count);
+  }
+
+  private static long nextSeparator(FileChannel channel, long pos, long size, ByteBuffer probe,
+                                    WordTokenizer.Mode mode) throws IOException {
+    while (pos < size) {
+      probe.clear();
+      int n = channel.read(probe, pos);
+      if (n <= 0) {
+        return size;
+      }
+      for (int i = 0; i < n; i++) {
+        byte b = probe.get(i);
+        // Unicode 模式下非 ASCII 字节和撇号都可能属于单词
+        if (!isLetter(b) && (mode == WordTokenizer.Mode.ASCII || b >= 0 && b != '\'')) {
+          return pos + i;
+        }
+      }
+      pos += n;
+    }
+    return size;
+  }
+
+  private static boolean isLetter(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  /**
+   * The graph of one run of chunks together with its first and last word, which are needed to
+   * add the edge across the seam when it is merged with its neighbour.
+   */
+  private static final class Partial {
+    final Map<String, Map<String, Integer>> graph;
+    final String firstWord;
+    final String lastWord;
+
+    Partial(Map<String, Map<String, Integer>> graph, String firstWord, String lastWord) {
+      this.graph = graph;
+      this.firstWord = firstWord;
+      this.lastWord = lastWord;
+    }
+
+    /**
+     * Merges {@code left} with the partial graph that directly follows it in the file.
+     */
+    static Partial merge(Partial left, Partial right) {
+      if (left.firstWord == null) {
+        return right;
+      }
+      if (right.firstWord == null) {
+        return left;
+      }
+      // 将较小的图合并进较大的图
+      Map<String, Map<String, Integer>> into = left.graph;
+      Map<String, Map<String, Integer>> from = right.graph;
+      if (into.size() < from.size()) {
+        into = right.graph;
+        from = left.graph;
+      }
+      for (Map.Entry<String, Map<String, Integer>> entry : from.entrySet()) {
+        Map<String, Integer> neighbors = into.get(entry.getKey());
+        if (neighbors == null) {
+          into.put(entry.getKey(), entry.getValue());
+        } else {
+          for (Map.Entry<String, Integer> edge : entry.getValue().entrySet()) {
+            neighbors.merge(edge.getKey(), edge.getValue(), Integer::sum);
+          }
+        }
+      }
+      // 跨越分块边界的边
+      into.get(left.lastWord).merge(right.firstWord, 1, Integer::sum);
+      return new Partial(into, left.firstWord, right.lastWord);
+    }
+  }
+
+  private static final class ChunkTask extends RecursiveTask<Partial> {
+    private static final long serialVersionUID = 1L;
+
+    private final FileChannel channel;
+    private final long[] bounds;
+    private final WordTokenizer.Mode mode;
+    private final int lo;
+    private final int hi;
+
+    ChunkTask(FileChannel channel, long[] bounds, WordTokenizer.Mode mode, int lo, int hi) {
+      this.channel = channel;
+      this.bounds = bounds;
+      this.mode = mode;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected Partial compute() {
+      if (hi - lo == 1) {
+        try {
+          return mode == WordTokenizer.Mode.ASCII ? tokenize(bounds[lo], bounds[hi])
+                  : decodeAndTokenize(bounds[lo], bounds[hi]);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      int mid = (lo + hi) >>> 1;
+      ChunkTask left = new ChunkTask(channel, bounds, mode, lo, mid);
+      left.fork();
+      Partial right = new ChunkTask(channel, bounds, mode, mid, hi).compute();
+      return Partial.merge(left.join(), right);
+    }
+
+    private Partial tokenize(long start, long end) throws IOException {
+      long startTime = Metrics.start();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      GraphBuilder builder = new GraphBuilder();
+      byte[] word = new byte[64];
+      int length = 0;
+      String firstWord = null;
+      String lastWord = null;
+      int limit = buffer.limit();
+      for (int i = 0; i <= limit; i++) {
+        byte b = i < limit ? buffer.get(i) : (byte) ' ';
+        if (b >= 'a' && b <= 'z') {
+          if (length == word.length) {
+            word = Arrays.copyOf(word, length * 2);
+          }
+          word[length++] = b;
+        } else if (b >= 'A' && b <= 'Z') {
+          if (length == word.length) {
+            word = Arrays.copyOf(word, length * 2);
+          }
+          word[length++] = (byte) (b + ('a' - 'A')); // 转换为小写
+        } else if (length > 0) {
+          lastWord = new String(word, 0, length, StandardCharsets.ISO_8859_1);
+          if (firstWord == null) {
+            firstWord = lastWord;
+          }
+          builder.accept(lastWord);
+          length = 0;
+        }
+      }
+      if (Metrics.ENABLED) {
+        Metrics.tokenized(limit, System.nanoTime() - startTime);
+      }
+      return new Partial(builder.graph(), firstWord, lastWord);
+    }
+
+    private Partial decodeAndTokenize(long start, long end) throws IOException {
+      long startTime = Metrics.start();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      CharBuffer chars = StandardCharsets.UTF_8.decode(buffer);
+      GraphBuilder builder = new GraphBuilder();
+      String[] ends = new String[2]; // 分块的第一个和最后一个单词
+      WordTokenizer.WordSink sink = word -> {
+        if (ends[0] == null) {
+          ends[0] = word;
+        }
+        ends[1] = word;
+        builder.accept(word);
+      };
+      WordTokenizer tokenizer = new WordTokenizer(mode);
+      tokenizer.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining(),
+              sink);
+      tokenizer.finish(sink);
+      if (Metrics.ENABLED) {
+        Metrics.tokenized(buffer.limit(), System.nanoTime() - startTime);
+      }
+      return new Partial(builder.graph(), ends[0], ends[1]);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Bounded, thread-safe cache of bridge-word and shortest-path results in front of one graph.
+ *
+ * <p>Shortest paths are cached as whole {@link ShortestPathTree}s keyed by source word, so one
+ * cached tree answers every query that starts from that word. Trees are evicted least recently
+ * used first once their total node count exceeds the configured budget; bridge-word results are
+ * evicted the same way by count.
+ *
+ * <p>When a {@link LiveGraph} grows, {@link #onUpdate} switches the cache to the new graph and
+ * keeps what is still valid. Bridge words only depend on which edges exist, so a new edge
+ * {@code u -> v} only drops the pairs {@code (u, successor of v)} and
+ * {@code (predecessor of u, v)}, and an append that only adds weight keeps them all. A tree is
+ * dropped if the append changed an edge leaving a node it reaches, or added words. Any other
+ * change goes through {@link #invalidate}, which drops every cached result.
+ */
+final class QueryCache implements LiveGraph.Listener {
+
+  /**
+   * Hit, miss and eviction counts of one cached operation.
+   */
+  static final class Stats {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    @Override
+    public String toString() {
+      return "hits=" + hits.sum() + " misses=" + misses.sum() + " evictions=" + evictions.sum();
+    }
+  }
+
+  private final Stats bridgeStats = new Stats();
+  private final Stats pathStats = new Stats();
+  private final LongAdder invalidations = new LongAdder();
+  private final int maxBridgeResults;
+  private final long maxTreeNodes;
+  private volatile Generation generation;
+
+  /**
+   * Caches at most {@code maxBridgeResults} bridge-word answers and shortest-path trees holding
+   * at most {@code maxTreeNodes} nodes in total.
+   */
+  QueryCache(BridgeWords bridgeWords, int maxBridgeResults, long maxTreeNodes) {
+    this.maxBridgeResults = maxBridgeResults;
+    this.maxTreeNodes = maxTreeNodes;
+    this.generation = new Generation(bridgeWords);
+  }
+
+  String queryBridgeWords(String word1, String word2) {
+    Generation g = generation;
+    int from = g.graph.idOf(word1);
+    int to = g.graph.idOf(word2);
+    if (from < 0 || to < 0) {
+      return Main.Graph.queryBridgeWords(word1, word2, g.bridgeWords);
+    }
+    return g.bridgeResults.get(Main.Graph.edgeKey(from, to),
+            key -> Main.Graph.queryBridgeWords(word1, word2, g.bridgeWords), g::isCurrent);
+  }
+
+  String calcShortestPath(String word1, String word2) {
+    Generation g = generation;
+    int source = g.graph.idOf(word1);
+    int target = g.graph.idOf(word2);
+    if (source < 0 || target < 0) {
+      return "One or both words are not in the graph!";
+    }
+    return Main.Graph.formatShortestPath(tree(g, source), target);
+  }
+
+  /**
+   * Same as {@link Main.Graph#shortestPathsFrom}, but reuses a cached tree for {@code word}.
+   */
+  Stream<String> shortestPathsFrom(String word) {
+    Generation g = generation;
+    int source = g.graph.idOf(word);
+    if (source < 0) {
+      return Stream.of("The word is not in the graph!");
+    }
+    return Main.Graph.shortestPathsFrom(tree(g, source));
+  }
+
+  /**
+   * Returns the full shortest-path tree from {@code source}, computing and caching it on a miss.
+   */
+  ShortestPathTree tree(int source) {
+    return tree(generation, source);
+  }
+
+  private ShortestPathTree tree(Generation g, int source) {
+    return g.trees.get(source, key -> ShortestPathTree.compute(g.graph, source), g::isCurrent);
+  }
+
+  BridgeWords bridgeWords() {
+    return generation.bridgeWords;
+  }
+
+  /**
+   * Drops every cached result and answers later queries from {@code bridgeWords} and its graph.
+   */
+  void invalidate(BridgeWords bridgeWords) {
+    generation = new Generation(bridgeWords);
+    invalidations.increment();
+  }
+
+  @Override
+  public void onUpdate(LiveGraph.Snapshot previous, LiveGraph.Snapshot current, long[] newEdges,
+                       int[] changedNodes) {
+    Generation g = generation;
+    if (g.graph != previous.graph()) {
+      invalidate(current.bridgeWords()); // 缓存并非来自上一个版本
+      return;
+    }
+    CompactGraph graph = current.graph();
+    boolean newWords = graph.nodeCount() != previous.graph().nodeCount();
+    // 持有两把锁时切换版本，旧版本的查询之后不会再写入缓存
+    synchronized (g.bridgeResults) {
+      synchronized (g.trees) {
+        for (long edge : newEdges) {
+          int from = (int) (edge >>> 32);
+          int to = (int) edge;
+          for (int e = graph.edgeStart(to); e < graph.edgeEnd(to); e++) {
+            g.bridgeResults.remove(Main.Graph.edgeKey(from, graph.target(e)));
+          }
+          for (int r = graph.reverseEdgeStart(from); r < graph.reverseEdgeEnd(from); r++) {
+            g.bridgeResults.remove(Main.Graph.edgeKey(graph.reverseSource(r), to));
+          }
+        }
+        // 新单词不在旧树中；出边权重变化只影响能到达该节点的源点
+        g.trees.removeIf(tree -> newWords || reachesAny(tree, changedNodes));
+        generation = new Generation(current.bridgeWords(), g.bridgeResults, g.trees);
+      }
+    }
+  }
+
+  private static boolean reachesAny(ShortestPathTree tree, int[] nodes) {
+    for (int node : nodes) {
+      if (tree.isReachable(node)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  Stats bridgeStats() {
+    return bridgeStats;
+  }
+
+  Stats pathStats() {
+    return pathStats;
+  }
+
+  @Override
+  public String toString() {
+    return "bridge words: " + bridgeStats + "\nshortest paths: " + pathStats
+            + "\ninvalidations: " + invalidations.sum();
+  }
+
+  /**
+   * One graph version and its caches. A new version either starts empty caches or takes over
+   * the previous ones after dropping what changed; results computed for an older version are
+   * never added to them.
+   */
+  private final class Generation {
+    final BridgeWords bridgeWords;
+    final CompactGraph graph;
+    final Lru<Long, String> bridgeResults;
+    final Lru<Integer, ShortestPathTree> trees;
+
+    Generation(BridgeWords bridgeWords) {
+      this(bridgeWords, new Lru<>(maxBridgeResults, result -> 1, bridgeStats),
+              new Lru<>(maxTreeNodes, tree -> tree.graph().nodeCount(), pathStats));
+    }
+
+    Generation(BridgeWords bridgeWords, Lru<Long, String> bridgeResults,
+               Lru<Integer, ShortestPathTree> trees) {
+      this.bridgeWords = bridgeWords;
+      this.graph = bridgeWords.graph();
+      this.bridgeResults = bridgeResults;
+      this.trees = trees;
+    }
+
+    boolean isCurrent() {
+      return generation == this;
+    }
+  }
+
+  /**
+   * Least-recently-used map bounded by the total weight of its values. Values are computed
+   * outside the lock, so concurrent misses on one key may compute it more than once; a value is
+   * only stored if its generation is still current once the lock is held again.
+   */
+  private static final class Lru<K, V> {
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Stats stats;
+    private long weight;
+
+    Lru(long maxWeight, ToLongFunction<V> weigher, Stats stats) {
+      this.maxWeight = maxWeight;
+      this.weigher = weigher;
+      this.stats = stats;
+    }
+
+    V get(K key, Function<K, V> loader, BooleanSupplier current) {
+      synchronized (this) {
+        V value = map.get(key);
+        if (value != null) {
+          stats.hits.increment();
+          return value;
+        }
+      }
+      stats.misses.increment();
+      V value = loader.apply(key);
+      long valueWeight = weigher.applyAsLong(value);
+      if (valueWeight > maxWeight) {
+        return value; // 超过容量上限的结果不缓存
+      }
+      synchronized (this) {
+        if (!current.getAsBoolean()) {
+          return value; // 图已更新，结果可能已过期
+        }
+        V old = map.put(key, value);
+        weight += valueWeight - (old == null ? 0 : weigher.applyAsLong(old));
+        Iterator<V> eldest = map.values().iterator();
+        while (weight > maxWeight) {
+          V evicted = eldest.next();
+          eldest.remove();
+          weight -= weigher.applyAsLong(evicted);
+          stats.evictions.increment();
+        }
+      }
+      return value;
+    }
+
+    synchronized void remove(K key) {
+      V old = map.remove(key);
+      if (old != null) {
+        weight -= weigher.applyAsLong(old);
+      }
+    }
+
+    synchronized void removeIf(Predicate<V> filter) {
+      Iterator<V> values = map.values().iterator();
+      while (values.hasNext()) {
+        V value = values.next();
+        if (filter.test(value)) {
+          values.remove();
+          weight -= weigher.applyAsLong(value);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,313 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Non-interactive random walks over a {@link CompactGraph}, for generating large numbers of walks.
+ *
+ * <p>Walk {@code i} of a batch draws from its own {@link SplittableRandom} seeded from the mixed
+ * batch seed plus {@code i}, so a batch gives the same walks for the same seed no matter how many
+ * threads run it, and batches with adjacent seeds do not share walks. Successors are picked
+ * uniformly, as in {@link Main.Graph#randomWalk}, or in proportion to edge weight through
+ * per-node alias tables. Scratch space for walks comes from a small pool owned by the walker, so
+ * it goes away with the walker instead of staying with the threads that ran it.
+ */
+final class RandomWalker {
+
+  /**
+   * When a walk stops, in addition to reaching a node without successors or the maximum length.
+   */
+  enum Termination {
+    /** Stop before following an edge a second time, like the interactive walk. */
+    REPEATED_EDGE,
+    /** Stop before entering a node a second time. */
+    REPEATED_NODE,
+    /** Only stop at a dead end or at the maximum length. */
+    MAX_LENGTH
+  }
+
+  private static final int BATCH_SIZE = 4096;
+  private static final int MAX_POOLED_STATES = Runtime.getRuntime().availableProcessors();
+
+  private final CompactGraph graph;
+  private final double[] aliasProbability;
+  private final int[] alias;
+  private final ConcurrentLinkedQueue<WalkState> states = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooledStates = new AtomicInteger();
+
+  /**
+   * Creates a walker; with {@code weighted} set, alias tables are built up front so that each
+   * weighted step costs O(1).
+   */
+  RandomWalker(CompactGraph graph, boolean weighted) {
+    this.graph = graph.dense(); // 别名表按边编号索引
+    if (weighted) {
+      aliasProbability = new double[graph.edgeCount()];
+      alias = new int[graph.edgeCount()];
+      for (int node = 0; node < graph.nodeCount(); node++) {
+        buildAliasTable(node);
+      }
+    } else {
+      aliasProbability = null;
+      alias = null;
+    }
+  }
+
+  /**
+   * Walks from a random start node and returns the node ids, first node included.
+   */
+  int[] walk(SplittableRandom rng, int maxLength, Termination termination) {
+    WalkState state = acquireState();
+    try {
+      int length = walk(rng, maxLength, termination, state);
+      return Arrays.copyOf(state.path, length);
+    } finally {
+      releaseState(state);
+    }
+  }
+
+  /**
+   * Returns walk number {@code index} of the batch seeded with {@code seed} as node ids, the same
+   * walk that {@link #walks} and {@link #writeWalks} produce at that position.
+   */
+  int[] walk(long seed, int index, int maxLength, Termination termination) {
+    return walk(walkRandom(seed, index), maxLength, termination);
+  }
+
+  /**
+   * Returns {@code count} walks as space-separated words, computed in parallel and kept in order.
+   */
+  Stream<String> walks(long seed, int count, int maxLength, Termination termination) {
+    return IntStream.range(0, count).parallel()
+            .mapToObj(i -> walkNumber(seed, i, maxLength, termination));
+  }
+
+  /**
+   * Writes {@code count} walks to {@code file}, one per line. Walks are generated in parallel in
+   * fixed-size batches and written in order, so memory stays bounded for any count.
+   */
+  void writeWalks(Path file, long seed, int count, int maxLength, Termination termination)
+          throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      String[] batch = new String[BATCH_SIZE];
+      for (int start = 0; start < count; start += BATCH_SIZE) {
+        int first = start;
+        int size = Math.min(BATCH_SIZE, count - start);
+        IntStream.range(0, size).parallel().forEach(i ->
+                batch[i] = walkNumber(seed, first + i, maxLength, termination));
+        for (int i = 0; i < size; i++) {
+          writer.write(batch[i]);
+          writer.newLine();
+        }
+      }
+    }
+  }
+
+  private String walkNumber(long seed, int index, int maxLength, Termination termination) {
+    WalkState state = acquireState();
+    try {
+      int length = walk(walkRandom(seed, index), maxLength, termination, state);
+      return state.toWords(graph, length);
+    } finally {
+      releaseState(state);
+    }
+  }
+
+  private WalkState acquireState() {
+    WalkState state = states.poll();
+    if (state == null) {
+      return new WalkState();
+    }
+    pooledStates.decrementAndGet();
+    return state;
+  }
+
+  private void releaseState(WalkState state) {
+    // 最多保留与处理器数相同的空闲状态
+    if (pooledStates.incrementAndGet() <= MAX_POOLED_STATES) {
+      states.offer(state);
+    } else {
+      pooledStates.decrementAndGet();
+    }
+  }
+
+  private static SplittableRandom walkRandom(long seed, int index) {
+    // 先混合批次种子，否则种子 s + 1 的第 i 个游走就是种子 s 的第 i + 1 个
+    return new SplittableRandom(mix64(mix64(seed) + index));
+  }
+
+  private int walk(SplittableRandom rng, int maxLength, Termination termination,
+                   WalkState state) {
+    if (graph.nodeCount() == 0 || maxLength <= 0) {
+      return 0;
+    }
+    state.seen.clear();
+    int node = rng.nextInt(graph.nodeCount());
+    state.path[0] = node;
+    int length = 1;
+    if (termination == Termination.REPEATED_NODE) {
+      state.seen.add(node);
+    }
+    while (length < maxLength && graph.outDegree(node) > 0) {
+      int edge = nextEdge(node, rng);
+      int next = graph.target(edge);
+      if (termination == Termination.REPEATED_EDGE
+              && !state.seen.add(Main.Graph.edgeKey(node, next))) {
+        break;
+      }
+      if (termination == Termination.REPEATED_NODE && !state.seen.add(next)) {
+        break;
+      }
+      node = next;
+      if (length == state.path.length) {
+        state.path = Arrays.copyOf(state.path, length * 2);
+      }
+      state.path[length++] = node;
+    }
+    return length;
+  }
+
+  private int nextEdge(int node, SplittableRandom rng) {
+    int start = graph.edgeStart(node);
+    int slot = start + rng.nextInt(graph.outDegree(node));
+    if (alias == null || rng.nextDouble() < aliasProbability[slot]) {
+      return slot;
+    }
+    return start + alias[slot];
+  }
+
+  /**
+   * Builds the alias table of {@code node} with Vose's method. Entry {@code e} keeps edge
+   * {@code e} with probability {@code aliasProbability[e]} and otherwise takes the edge
+   * {@code alias[e]} positions after the node's first edge.
+   */
+  private void buildAliasTable(int node) {
+    int start = graph.edgeStart(node);
+    int degree = graph.outDegree(node);
+    if (degree == 0) {
+      return;
+    }
+    long total = 0;
+    for (int e = start; e < start + degree; e++) {
+      total += graph.weight(e);
+    }
+    double[] scaled = new double[degree];
+    int[] small = new int[degree];
+    int[] large = new int[degree];
+    int smallCount = 0;
+    int largeCount = 0;
+    for (int i = 0; i < degree; i++) {
+      scaled[i] = (double) graph.weight(start + i) * degree / total;
+      if (scaled[i] < 1.0) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      aliasProbability[start + less] = scaled[less];
+      alias[start + less] = more;
+      scaled[more] = scaled[more] + scaled[less] - 1.0;
+      if (scaled[more] < 1.0) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // 剩余的项由于舍入误差应视为概率 1
+    while (largeCount > 0) {
+      aliasProbability[start + large[--largeCount]] = 1.0;
+    }
+    while (smallCount > 0) {
+      aliasProbability[start + small[--smallCount]] = 1.0;
+    }
+  }
+
+  /**
+   * Stafford's variant 13 of the MurmurHash3 finalizer, used to derive well-spread per-walk seeds.
+   */
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Scratch space for one walk at a time, reused through the walker's pool.
+   */
+  private static final class WalkState {
+    final LongHashSet seen = new LongHashSet();
+    final StringBuilder text = new StringBuilder();
+    int[] path = new int[16];
+
+    String toWords(CompactGraph graph, int length) {
+      text.setLength(0);
+      for (int i = 0; i < length; i++) {
+        if (i > 0) {
+          text.append(' ');
+        }
+        text.append(graph.word(path[i]));
+      }
+      return text.toString();
+    }
+  }
+
+  /**
+   * Open-addressing set of long keys whose {@link #clear} costs time proportional to the number
+   * of keys added since the last clear rather than to the table size.
+   */
+  static final class LongHashSet {
+    private long[] keys = new long[64];
+    private boolean[] used = new boolean[64];
+    private int[] usedSlots = new int[32];
+    private int size;
+
+    boolean add(long key) {
+      if (size * 2 >= keys.length) {
+        grow();
+      }
+      int mask = keys.length - 1;
+      int slot = (int) mix64(key) & mask;
+      while (used[slot]) {
+        if (keys[slot] == key) {
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+      used[slot] = true;
+      keys[slot] = key;
+      usedSlots[size++] = slot;
+      return true;
+    }
+
+    void clear() {
+      for (int i = 0; i < size; i++) {
+        used[usedSlots[i]] = false;
+      }
+      size = 0;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldSlots = usedSlots;
+      int oldSize = size;
+      keys = new long[oldKeys.length * 2];
+      used = new boolean[keys.length];
+      usedSlots = new int[keys.length / 2];
+      size = 0;
+      for (int i = 0; i < oldSize; i++) {
+        add(oldKeys[oldSlots[i]]);
+      }
+    }
+  }
+}
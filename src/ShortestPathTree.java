@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single-source shortest paths over a {@link CompactGraph}.
+ *
+ * <p>One Dijkstra run from the source records the distance and the predecessor of every reached
+ * node, so the path to any target can be read back from the predecessor tree without searching
+ * again.
+ */
+final class ShortestPathTree {
+
+  static final int UNREACHABLE = Integer.MAX_VALUE;
+
+  private static final int CHECK_INTERVAL = 1024;
+
+  private final CompactGraph graph;
+  private final int source;
+  private final int[] distances;
+  private final int[] previous;
+
+  private ShortestPathTree(CompactGraph graph, int source, int[] distances, int[] previous) {
+    this.graph = graph;
+    this.source = source;
+    this.distances = distances;
+    this.previous = previous;
+  }
+
+  /**
+   * Runs Dijkstra from {@code source} over the whole graph.
+   */
+  static ShortestPathTree compute(CompactGraph graph, int source) {
+    return compute(graph, source, -1);
+  }
+
+  /**
+   * Runs Dijkstra from {@code source} and stops as soon as {@code target} is settled. Only the
+   * distance and path of {@code target} are final in the returned tree; pass -1 to settle every
+   * reachable node.
+   */
+  static ShortestPathTree compute(CompactGraph graph, int source, int target) {
+    return compute(graph, source, target, Cancellation.NONE);
+  }
+
+  /**
+   * Like {@link #compute(CompactGraph, int, int)}, checking {@code cancellation} every
+   * {@link #CHECK_INTERVAL} settled nodes.
+   */
+  static ShortestPathTree compute(CompactGraph graph, int source, int target,
+                                  Cancellation cancellation) {
+    long start = Metrics.start();
+    int nodeCount = graph.nodeCount();
+    int[] distances = new int[nodeCount];
+    int[] previous = new int[nodeCount];
+    boolean[] settled = new boolean[nodeCount];
+    Arrays.fill(distances, UNREACHABLE);
+    Arrays.fill(previous, -1);
+    distances[source] = 0;
+
+    // 只有已到达的节点才会进入队列
+    IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+    queue.insertOrDecrease(source, 0);
+    long nodesSettled = 0;
+    long edgesRelaxed = 0;
+    while (!queue.isEmpty()) {
+      int node = queue.poll();
+      settled[node] = true;
+      nodesSettled++;
+      if (nodesSettled % CHECK_INTERVAL == 0) {
+        cancellation.check();
+      }
+      if (node == target) {
+        break;
+      }
+      edgesRelaxed += graph.outDegree(node);
+      for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+        int neighbor = graph.target(e);
+        int newDist = distances[node] + graph.weight(e);
+        if (!settled[neighbor] && newDist < distances[neighbor]) {
+          distances[neighbor] = newDist;
+          previous[neighbor] = node;
+          queue.insertOrDecrease(neighbor, newDist);
+        }
+      }
+    }
+    Metrics.dijkstra(nodesSettled, edgesRelaxed);
+    Metrics.record(Metrics.Operation.DIJKSTRA, start);
+    return new ShortestPathTree(graph, source, distances, previous);
+  }
+
+  CompactGraph graph() {
+    return graph;
+  }
+
+  int source() {
+    return source;
+  }
+
+  boolean isReachable(int target) {
+    return distances[target] != UNREACHABLE;
+  }
+
+  int distance(int target) {
+    return distances[target];
+  }
+
+  /**
+   * Returns the words on the shortest path from the source to {@code target}, or an empty list if
+   * the target is unreachable.
+   */
+  List<String> path(int target) {
+    if (!isReachable(target)) {
+      return Collections.emptyList();
+    }
+    List<String> path = new ArrayList<>();
+    for (int at = target; at != -1; at = previous[at]) {
+      path.add(graph.word(at));
+    }
+    Collections.reverse(path);
+    return path;
+  }
+}
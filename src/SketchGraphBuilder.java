@@ -0,0 +1,329 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds an approximate word graph in fixed memory, keeping only the frequent edges.
+ *
+ * <p>Edges are counted in a count-min sketch of {@code ceil(ln(1 / delta))} rows of
+ * {@code ceil(e / epsilon)} counters, updated conservatively (only the counters holding the
+ * current minimum are raised). Every edge whose estimate reaches {@code minCount} becomes a
+ * heavy-hitter candidate, remembered with its two words in a table of at most
+ * {@code 2 * maxEdges} entries; when the table fills up, only the {@code maxEdges} candidates with
+ * the highest estimates are kept. {@link #graph} then contains every candidate whose final
+ * estimate is at least {@code minCount}, weighted by that estimate.
+ *
+ * <p>An estimate is never below the true count and, with probability {@code 1 - delta}, exceeds
+ * it by at most {@code epsilon} times the number of bigrams read. Rare edges may therefore be
+ * kept with an inflated weight, while an edge with at least {@code minCount} occurrences can
+ * only be dropped once more than {@code 2 * maxEdges} edges appear that frequent. The sketch and
+ * the candidate table are sized up front, and neither grows with the corpus or its vocabulary.
+ * Words and edges are those of {@link Main.Graph#buildGraph}; words that only occur in pruned
+ * edges are not in the graph.
+ */
+final class SketchGraphBuilder implements WordTokenizer.WordSink {
+
+  /**
+   * Error bounds and pruning limits of an approximate build. Instances are immutable; each method
+   * returns a modified copy.
+   */
+  static final class Options {
+    private static final int MAX_EDGES = 1 << 26;
+
+    private final int minCount;
+    private final double epsilon;
+    private final double delta;
+    private final int maxEdges;
+
+    private Options(int minCount, double epsilon, double delta, int maxEdges) {
+      if (minCount < 1 || !(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)
+              || maxEdges < 1 || maxEdges > MAX_EDGES) {
+        throw new IllegalArgumentException("Invalid sketch options: minCount=" + minCount
+                + " epsilon=" + epsilon + " delta=" + delta + " maxEdges=" + maxEdges);
+      }
+      this.minCount = minCount;
+      this.epsilon = epsilon;
+      this.delta = delta;
+      this.maxEdges = maxEdges;
+    }
+
+    /**
+     * Keeps the edges that occur at least {@code minCount} times, with an error of at most
+     * 1e-5 of the bigram count at 99% confidence and at most 262,144 edges.
+     */
+    static Options minCount(int minCount) {
+      return new Options(minCount, 1e-5, 0.01, 1 << 18);
+    }
+
+    /**
+     * Reads {@code lab1.minEdgeCount}, {@code lab1.sketchEpsilon}, {@code lab1.sketchDelta} and
+     * {@code lab1.maxEdges}. Returns null unless {@code lab1.minEdgeCount} is set.
+     */
+    static Options fromSystemProperties() {
+      Integer minCount = Integer.getInteger("lab1.minEdgeCount");
+      if (minCount == null) {
+        return null;
+      }
+      Options defaults = minCount(minCount);
+      return new Options(minCount,
+              Double.parseDouble(System.getProperty("lab1.sketchEpsilon",
+                      Double.toString(defaults.epsilon))),
+              Double.parseDouble(System.getProperty("lab1.sketchDelta",
+                      Double.toString(defaults.delta))),
+              Integer.getInteger("lab1.maxEdges", defaults.maxEdges));
+    }
+
+    /**
+     * Bounds the overestimate of a count by {@code epsilon} times the number of bigrams.
+     */
+    Options epsilon(double epsilon) {
+      return new Options(minCount, epsilon, delta, maxEdges);
+    }
+
+    /**
+     * Lets the overestimate bound fail with probability {@code delta}.
+     */
+    Options delta(double delta) {
+      return new Options(minCount, epsilon, delta, maxEdges);
+    }
+
+    /**
+     * Keeps at most {@code maxEdges} edges, the ones with the highest estimates.
+     */
+    Options maxEdges(int maxEdges) {
+      return new Options(minCount, epsilon, delta, maxEdges);
+    }
+
+    int minCount() {
+      return minCount;
+    }
+  }
+
+  private static final int MAX_COUNTERS = 1 << 28; // 计数器总共不超过 1GB
+
+  private final int minCount;
+  private final int maxEdges;
+  private final int width;
+  private final int depth;
+  private final int[] counters; // depth 行、每行 width 个计数器
+  private final long[] keys; // 候选边的开放寻址哈希表，0 表示空槽
+  private final int[] estimates;
+  private final String[] froms;
+  private final String[] tos;
+  private int candidateCount;
+  private long bigrams;
+  private String previous;
+  private long previousHash;
+
+  SketchGraphBuilder(Options options) {
+    this.minCount = options.minCount;
+    this.maxEdges = options.maxEdges;
+    double width = Math.ceil(Math.E / options.epsilon);
+    double depth = Math.max(1, Math.ceil(Math.log(1 / options.delta)));
+    if (width * depth > MAX_COUNTERS) {
+      throw new IllegalArgumentException("Sketch too large for epsilon=" + options.epsilon
+              + " and delta=" + options.delta);
+    }
+    this.width = (int) width;
+    this.depth = (int) depth;
+    this.counters = new int[this.width * this.depth];
+    // 候选数不超过 2 * maxEdges，装载因子不超过 0.5
+    int slots = Integer.highestOneBit(4 * maxEdges - 1) << 1;
+    this.keys = new long[slots];
+    this.estimates = new int[slots];
+    this.froms = new String[slots];
+    this.tos = new String[slots];
+  }
+
+  @Override
+  public void accept(String word) {
+    long hash = hash(word);
+    if (previous != null) {
+      bigrams++;
+      long key = edgeKey(previousHash, hash);
+      int estimate = add(key);
+      if (estimate >= minCount) {
+        offer(key, estimate, previous, word);
+      }
+    }
+    previous = word;
+    previousHash = hash;
+  }
+
+  /**
+   * Returns the number of bigrams counted so far.
+   */
+  long bigrams() {
+    return bigrams;
+  }
+
+  /**
+   * Returns the bound on the overestimate of any edge weight that holds with probability
+   * {@code 1 - delta}, given the bigrams counted so far.
+   */
+  long errorBound() {
+    return (long) Math.ceil(Math.E / width * bigrams);
+  }
+
+  /**
+   * Returns the memory held by the sketch and the candidate table, in bytes, ignoring the words.
+   */
+  long estimatedBytes() {
+    return 4L * counters.length + 20L * keys.length;
+  }
+
+  /**
+   * Returns the edges whose estimated count is at least {@code minCount}, in map form. Every word
+   * of a kept edge is a key, as in {@link Main.Graph#buildGraph}.
+   */
+  Map<String, Map<String, Integer>> graph() {
+    Map<String, Map<String, Integer>> graph = new HashMap<>();
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        int estimate = estimate(keys[slot]);
+        if (estimate >= minCount) {
+          graph.computeIfAbsent(froms[slot], k -> new HashMap<>()).put(tos[slot], estimate);
+          // 与 buildGraph 一致，终点单词也是键
+          graph.computeIfAbsent(tos[slot], k -> new HashMap<>());
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Counts one more occurrence of {@code key} and returns its new estimate.
+   */
+  private int add(long key) {
+    int h1 = (int) key;
+    int h2 = (int) (key >>> 32) | 1;
+    int min = Integer.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      min = Math.min(min, counters[index(row, h1 + row * h2)]);
+    }
+    if (min == Integer.MAX_VALUE) {
+      return min; // 计数器已饱和
+    }
+    int estimate = min + 1;
+    for (int row = 0; row < depth; row++) {
+      int index = index(row, h1 + row * h2);
+      if (counters[index] < estimate) {
+        counters[index] = estimate;
+      }
+    }
+    return estimate;
+  }
+
+  private int estimate(long key) {
+    int h1 = (int) key;
+    int h2 = (int) (key >>> 32) | 1;
+    int min = Integer.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      min = Math.min(min, counters[index(row, h1 + row * h2)]);
+    }
+    return min;
+  }
+
+  private int index(int row, int hash) {
+    // 将 32 位哈希映射到 [0, width) 而不取模
+    return row * width + (int) (((hash & 0xFFFFFFFFL) * width) >>> 32);
+  }
+
+  /**
+   * Records {@code from -> to} as a heavy-hitter candidate, pruning the table if it is full.
+   */
+  private void offer(long key, int estimate, String from, String to) {
+    int mask = keys.length - 1;
+    int slot = slotOf(key, mask);
+    for (long k; (k = keys[slot]) != 0; slot = (slot + 1) & mask) {
+      if (k == key) {
+        estimates[slot] = estimate;
+        return;
+      }
+    }
+    keys[slot] = key;
+    estimates[slot] = estimate;
+    froms[slot] = from;
+    tos[slot] = to;
+    if (++candidateCount == 2 * maxEdges) {
+      prune();
+    }
+  }
+
+  /**
+   * Keeps the {@code maxEdges} candidates with the highest estimates, ties broken arbitrarily.
+   */
+  private void prune() {
+    int[] sorted = new int[candidateCount];
+    int n = 0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        sorted[n++] = estimates[slot];
+      }
+    }
+    Arrays.sort(sorted);
+    int cutoff = sorted[candidateCount - maxEdges];
+    int keepAtCutoff = maxEdges;
+    for (int estimate : sorted) {
+      if (estimate > cutoff) {
+        keepAtCutoff--;
+      }
+    }
+    long[] keptKeys = new long[maxEdges];
+    int[] keptEstimates = new int[maxEdges];
+    String[] keptFroms = new String[maxEdges];
+    String[] keptTos = new String[maxEdges];
+    int kept = 0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0 && (estimates[slot] > cutoff
+              || (estimates[slot] == cutoff && keepAtCutoff-- > 0))) {
+        keptKeys[kept] = keys[slot];
+        keptEstimates[kept] = estimates[slot];
+        keptFroms[kept] = froms[slot];
+        keptTos[kept++] = tos[slot];
+      }
+    }
+    // 清空后重新插入，线性探测表不能原地删除
+    Arrays.fill(keys, 0);
+    Arrays.fill(froms, null);
+    Arrays.fill(tos, null);
+    int mask = keys.length - 1;
+    for (int i = 0; i < kept; i++) {
+      int slot = slotOf(keptKeys[i], mask);
+      while (keys[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = keptKeys[i];
+      estimates[slot] = keptEstimates[i];
+      froms[slot] = keptFroms[i];
+      tos[slot] = keptTos[i];
+    }
+    candidateCount = kept;
+  }
+
+  private static int slotOf(long key, int mask) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+  /**
+   * 64-bit FNV-1a hash of {@code word}, so that distinct edges practically never share a key.
+   */
+  private static long hash(String word) {
+    long h = 0xCBF29CE484222325L;
+    for (int i = 0; i < word.length(); i++) {
+      h = (h ^ word.charAt(i)) * 0x100000001B3L;
+    }
+    return h;
+  }
+
+  /**
+   * Mixes the hashes of both words into a non-zero key, with the finalizer of MurmurHash3.
+   */
+  private static long edgeKey(long from, long to) {
+    long h = from * 0x9E3779B97F4A7C15L + to;
+    h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+    h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+}
@@ -0,0 +1,97 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Inserts bridge words into text, the work behind {@link Main.Graph#generateNewText}.
+ *
+ * <p>Words are scanned straight from the input by the {@link WordTokenizer.Mode} the graphs are
+ * built with and resolved to ids with {@link CompactGraph#idOf(CharSequence, int, int)}; each
+ * bridge is picked by {@link BridgeWords#randomBridge} and appended to a reusable output buffer,
+ * so a call creates no regex matchers, word arrays or candidate lists, and only the result
+ * string. In ASCII mode the words are those of the {@code [^a-zA-Z\s]} replacement followed by
+ * {@code split("\\s+")}, including the empty first word that {@code split} yields when the text
+ * starts with a separator, and are looked up as written. In Unicode mode each word is first
+ * normalized like the tokenizer does, into a second reusable buffer.
+ */
+final class TextRewriter {
+
+  private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+  private static final ThreadLocal<StringBuilder> OUTPUT =
+          ThreadLocal.withInitial(StringBuilder::new);
+  private static final ThreadLocal<StringBuilder> WORD =
+          ThreadLocal.withInitial(StringBuilder::new);
+
+  private TextRewriter() {
+  }
+
+  /**
+   * Returns {@code text} with a random bridge word inserted between every adjacent pair of words
+   * that has one, or {@code text} itself if it has fewer than two words.
+   */
+  static String rewrite(String text, BridgeWords bridgeWords) {
+    StringBuilder out = OUTPUT.get();
+    out.setLength(0);
+    try {
+      return rewrite(text, bridgeWords, ThreadLocalRandom.current(), WordTokenizer.Mode.DEFAULT,
+              out) ? out.toString() : text;
+    } finally {
+      // 不保留偶尔出现的超长文本占用的缓冲区
+      if (out.capacity() > MAX_RETAINED_CAPACITY) {
+        OUTPUT.remove();
+      }
+    }
+  }
+
+  /**
+   * Appends the rewritten {@code text} to {@code out}, splitting it into words with {@code mode}
+   * and picking bridges with {@code random}. Returns false, leaving {@code out} unchanged, if the
+   * text has fewer than two words.
+   */
+  static boolean rewrite(CharSequence text, BridgeWords bridgeWords, RandomGenerator random,
+                         WordTokenizer.Mode mode, StringBuilder out) {
+    CompactGraph graph = bridgeWords.graph();
+    StringBuilder word = mode == WordTokenizer.Mode.ASCII ? null : WORD.get();
+    int mark = out.length();
+    int length = text.length();
+    int words = 0;
+    int previous = -1;
+    if (length > 0 && mode.wordStart(text, 0) != 0) {
+      words = 1; // 开头的空单词，不输出任何字符
+      previous = graph.idOf(text, 0, 0);
+    }
+    int i = 0;
+    while (true) {
+      int start = mode.wordStart(text, i);
+      if (start == length) {
+        break;
+      }
+      i = mode.wordEnd(text, start);
+      int current;
+      if (word == null) {
+        current = graph.idOf(text, start, i);
+      } else {
+        word.setLength(0);
+        mode.appendWord(text, start, i, word);
+        current = graph.idOf(word, 0, word.length());
+      }
+      if (words > 0) {
+        out.append(' ');
+        int bridge = previous < 0 || current < 0
+                ? -1 : bridgeWords.randomBridge(previous, current, random);
+        if (bridge >= 0) {
+          graph.appendWord(bridge, out);
+          out.append(' ');
+        }
+      }
+      out.append(text, start, i);
+      previous = current;
+      words++;
+    }
+    if (words < 2) {
+      out.setLength(mark);
+      return false;
+    }
+    return true;
+  }
+}
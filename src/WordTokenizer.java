@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Incremental tokenizer that splits text into lower-case words without regular expressions.
+ *
+ * <p>Which characters form words depends on the {@link Mode}. In the default {@link Mode#ASCII}
+ * mode only the ASCII letters {@code a-z} and {@code A-Z} form words and every other character
+ * acts as a separator, which gives the same words as the {@code [^a-zA-Z\s]} replacement
+ * followed by {@code split("\\s+")} in {@link Main.Graph#buildGraph}. Characters are classified
+ * through a table computed once for the whole Basic Multilingual Plane, so the per-character
+ * cost is one array load in either mode. A word cut by a buffer boundary is kept in the
+ * tokenizer and completed by the next {@link #feed} call, so input can be pushed in arbitrary
+ * chunks. The {@link Mode} methods find the same words in a {@link CharSequence} without
+ * allocating, for query-time text.
+ */
+final class WordTokenizer {
+
+  /**
+   * Receives the words produced by a {@link WordTokenizer}, in input order.
+   */
+  interface WordSink {
+    void accept(String word);
+  }
+
+  /**
+   * Which characters form words.
+   */
+  enum Mode {
+    /** ASCII letters only, the words of {@link Main.Graph#buildGraph}. */
+    ASCII,
+    /**
+     * Unicode letters and the combining marks that follow them, with an apostrophe ({@code '} or
+     * {@code U+2019}) between two letters kept as {@code '}. Every CJK ideograph is a word of its
+     * own, since such text has no spaces between words.
+     */
+    UNICODE;
+
+    /**
+     * The mode named by {@code -Dlab1.tokenizer} ({@code ascii} or {@code unicode}), used by the
+     * graph builders and by {@link TextRewriter}; ASCII unless set to a valid name.
+     */
+    static final Mode DEFAULT = parse(System.getProperty("lab1.tokenizer"));
+
+    /**
+     * Returns the mode named {@code name}, ignoring case. A null name gives {@link #ASCII}, and so
+     * does an unknown one, after a warning; throwing here would fail the initialization of this
+     * class and leave every later use with a {@link NoClassDefFoundError}.
+     */
+    static Mode parse(String name) {
+      if (name == null) {
+        return ASCII;
+      }
+      switch (name.trim().toLowerCase(Locale.ROOT)) {
+        case "ascii":
+          return ASCII;
+        case "unicode":
+          return UNICODE;
+        default:
+          System.err.println("Invalid lab1.tokenizer: " + name + ", using ascii");
+          return ASCII;
+      }
+    }
+
+    /**
+     * Returns the index of the first word of {@code text} at or after {@code from}, or
+     * {@code text.length()} if there is none.
+     */
+    int wordStart(CharSequence text, int from) {
+      int length = text.length();
+      int i = from;
+      while (i < length) {
+        int c = codePointAt(text, i);
+        int type = classOf(c);
+        if (type == LETTER && (this == UNICODE || c < 0x80)
+                || type == IDEOGRAPH && this == UNICODE) {
+          return i;
+        }
+        i += Character.charCount(c);
+      }
+      return length;
+    }
+
+    /**
+     * Returns the index just past the word that starts at {@code start}.
+     */
+    int wordEnd(CharSequence text, int start) {
+      int length = text.length();
+      if (this == ASCII) {
+        int i = start;
+        while (i < length && text.charAt(i) < 0x80 && CLASSES[text.charAt(i)] == LETTER) {
+          i++;
+        }
+        return i;
+      }
+      int first = codePointAt(text, start);
+      int i = start + Character.charCount(first);
+      if (classOf(first) == IDEOGRAPH) {
+        return i;
+      }
+      while (i < length) {
+        int c = codePointAt(text, i);
+        int type = classOf(c);
+        if (type == APOSTROPHE && i + 1 < length
+                && classOf(codePointAt(text, i + 1)) == LETTER) {
+          i++; // 撇号后紧跟字母时保留在单词中
+        } else if (type != LETTER && type != MARK) {
+          return i;
+        }
+        i += Character.charCount(c);
+      }
+      return length;
+    }
+
+    /**
+     * Appends the word from {@code start} to {@code end} to {@code out} as the tokenizer emits
+     * it: lower-cased, with apostrophes written as {@code '}.
+     */
+    void appendWord(CharSequence text, int start, int end, StringBuilder out) {
+      for (int i = start; i < end; ) {
+        int c = codePointAt(text, i);
+        i += Character.charCount(c);
+        if (classOf(c) == APOSTROPHE) {
+          out.append('\'');
+        } else {
+          out.appendCodePoint(lowerCase(c));
+        }
+      }
+    }
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final byte SEPARATOR = 0;
+  private static final byte LETTER = 1;
+  private static final byte MARK = 2;
+  private static final byte IDEOGRAPH = 3;
+  private static final byte APOSTROPHE = 4;
+
+  // 基本多文种平面中每个字符的类别，ASCII 模式只使用前 128 项中的字母
+  private static final byte[] CLASSES = new byte[Character.MAX_VALUE + 1];
+
+  static {
+    for (int c = 0; c < CLASSES.length; c++) {
+      CLASSES[c] = Character.isSurrogate((char) c) ? SEPARATOR : computeClass(c);
+    }
+  }
+
+  private final Mode mode;
+  private final StringBuilder word = new StringBuilder();
+  private char highSurrogate; // 缓冲区末尾未配对的高代理项
+  private boolean apostrophe; // 单词后待定的撇号，只有后面跟着字母时才保留
+
+  WordTokenizer() {
+    this(Mode.DEFAULT);
+  }
+
+  WordTokenizer(Mode mode) {
+    this.mode = mode;
+  }
+
+  /**
+   * Tokenizes {@code len} characters of {@code buf} starting at {@code off}.
+   */
+  void feed(char[] buf, int off, int len, WordSink sink) {
+    int end = off + len;
+    if (mode == Mode.ASCII) {
+      for (int i = off; i < end; i++) {
+        char c = buf[i];
+        if (c < 0x80 && CLASSES[c] == LETTER) {
+          word.append((char) (c | 0x20)); // 转换为小写
+        } else if (word.length() > 0) {
+          sink.accept(word.toString());
+          word.setLength(0);
+        }
+      }
+      return;
+    }
+    for (int i = off; i < end; i++) {
+      char c = buf[i];
+      if (highSurrogate != 0) {
+        char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          int codePoint = Character.toCodePoint(high, c);
+          accept(codePoint, classOf(codePoint), sink);
+          continue;
+        }
+        flush(sink);
+      }
+      if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else {
+        accept(c, CLASSES[c], sink);
+      }
+    }
+  }
+
+  /**
+   * Flushes the word pending at the end of the input, if any.
+   */
+  void finish(WordSink sink) {
+    highSurrogate = 0;
+    flush(sink);
+  }
+
+  private void accept(int c, int type, WordSink sink) {
+    switch (type) {
+      case LETTER:
+        if (apostrophe) {
+          word.append('\'');
+          apostrophe = false;
+        }
+        word.appendCodePoint(lowerCase(c));
+        break;
+      case MARK:
+        if (word.length() > 0 && !apostrophe) {
+          word.appendCodePoint(c);
+        } else {
+          flush(sink);
+        }
+        break;
+      case APOSTROPHE:
+        if (word.length() > 0 && !apostrophe) {
+          apostrophe = true;
+        } else {
+          flush(sink);
+        }
+        break;
+      case IDEOGRAPH:
+        flush(sink);
+        sink.accept(c <= Character.MAX_VALUE ? String.valueOf((char) c)
+                : new String(Character.toChars(c)));
+        break;
+      default:
+        flush(sink);
+    }
+  }
+
+  private void flush(WordSink sink) {
+    apostrophe = false;
+    if (word.length() > 0) {
+      sink.accept(word.toString());
+      word.setLength(0);
+    }
+  }
+
+  /**
+   * Reads {@code reader} to the end in fixed-size chunks and passes every word to {@code sink},
+   * in the {@link Mode#DEFAULT} mode.
+   */
+  static void tokenize(Reader reader, WordSink sink) throws IOException {
+    tokenize(reader, Mode.DEFAULT, sink);
+  }
+
+  /**
+   * Reads {@code reader} to the end in fixed-size chunks and passes every word to {@code sink}.
+   */
+  static void tokenize(Reader reader, Mode mode, WordSink sink) throws IOException {
+    long start = Metrics.start();
+    long chars = 0;
+    WordTokenizer tokenizer = new WordTokenizer(mode);
+    char[] buf = new char[BUFFER_SIZE];
+    int n;
+    while ((n = reader.read(buf, 0, buf.length)) != -1) {
+      tokenizer.feed(buf, 0, n, sink);
+      chars += n;
+    }
+    tokenizer.finish(sink);
+    if (Metrics.ENABLED) {
+      Metrics.tokenized(chars, System.nanoTime() - start);
+    }
+  }
+
+  private static int classOf(int c) {
+    return c <= Character.MAX_VALUE ? CLASSES[c] : computeClass(c);
+  }
+
+  private static byte computeClass(int c) {
+    if (c == '\'' || c == '\u2019') {
+      return APOSTROPHE;
+    }
+    if (Character.isIdeographic(c)) {
+      return IDEOGRAPH;
+    }
+    if (Character.isLetter(c)) {
+      return LETTER;
+    }
+    int type = Character.getType(c);
+    return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+            ? MARK : SEPARATOR;
+  }
+
+  private static int lowerCase(int c) {
+    return c < 0x80 ? c | 0x20 : Character.toLowerCase(c);
+  }
+
+  private static int codePointAt(CharSequence text, int index) {
+    char c = text.charAt(index);
+    if (Character.isHighSurrogate(c) && index + 1 < text.length()
+            && Character.isLowSurrogate(text.charAt(index + 1))) {
+      return Character.toCodePoint(c, text.charAt(index + 1));
+    }
+    return c;
+  }
+}
@@ -1,10 +1,40 @@
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class GraphTest {
     @Test
@@ -86,4 +116,1107 @@ public class GraphTest {
       
     }
 
+  @Test
+  public void testBuildGraphStreaming() {
+    // 流式构建的图应与原有实现完全一致
+    assertEquals(Main.Graph.buildGraph("src/y.txt"), Main.Graph.buildGraphStreaming("src/y.txt"));
+    assertEquals(Main.Graph.buildGraph("src/z.txt"), Main.Graph.buildGraphStreaming("src/z.txt"));
+  }
+
+  @Test
+  public void testBuildGraphParallel() throws IOException {
+    // 使用很小的分块以覆盖分块边界上的边
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (String file : new String[] {"src/y.txt", "src/z.txt"}) {
+      Map<String, Map<String, Integer>> expected = Main.Graph.buildGraph(file);
+      assertEquals(expected, Main.Graph.buildGraphParallel(file));
+      for (long chunkSize = 1; chunkSize <= 64; chunkSize *= 2) {
+        assertEquals(expected, ParallelGraphBuilder.build(Paths.get(file), pool, chunkSize));
+      }
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  public void testCompactGraph() {
+    // CSR 形式与 Map 形式可以互相转换，id 按 Map 的遍历顺序分配
+    for (String file : new String[] {"src/y.txt", "src/z.txt"}) {
+      Map<String, Map<String, Integer>> graph = Main.Graph.buildGraph(file);
+      CompactGraph compact = CompactGraph.from(graph);
+      assertEquals(graph, compact.toMap());
+      assertEquals(graph.size(), compact.nodeCount());
+      int id = 0;
+      int edges = 0;
+      for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
+        assertEquals(entry.getKey(), compact.word(id));
+        assertEquals(id, compact.idOf(entry.getKey()));
+        int e = compact.edgeStart(id);
+        for (Map.Entry<String, Integer> neighbor : entry.getValue().entrySet()) {
+          assertEquals(neighbor.getKey(), compact.word(compact.target(e)));
+          assertEquals((int) neighbor.getValue(), compact.weight(e++));
+          assertTrue(compact.hasEdge(id, compact.idOf(neighbor.getKey())));
+        }
+        assertEquals(e, compact.edgeEnd(id));
+        edges += entry.getValue().size();
+        id++;
+      }
+      assertEquals(edges, compact.edgeCount());
+      int inDegrees = 0;
+      for (int node = 0; node < compact.nodeCount(); node++) {
+        inDegrees += compact.inDegree(node);
+      }
+      assertEquals(edges, inDegrees);
+    }
+
+    // 只作为终点出现的单词排在后面，没有出边
+    Map<String, Map<String, Integer>> map = new LinkedHashMap<>();
+    map.put("a", Map.of("b", 2));
+    CompactGraph pair = CompactGraph.from(map);
+    assertEquals(2, pair.nodeCount());
+    assertEquals("b", pair.word(1));
+    assertEquals(0, pair.outDegree(1));
+    assertEquals(1, pair.inDegree(1));
+    assertFalse(pair.hasEdge(1, 0));
+    assertEquals(Map.of("a", Map.of("b", 2), "b", Map.of()), pair.toMap());
+
+    // 按字符区间查找，不存在的单词返回 -1
+    assertEquals(1, pair.idOf("xx b yy", 3, 4));
+    assertEquals(-1, pair.idOf("c"));
+    assertEquals(-1, pair.idOf(""));
+    assertEquals(0, CompactGraph.from(new HashMap<>()).nodeCount());
+  }
+
+  @Test
+  public void testShortestPathTree() {
+    // 单源最短路径树的距离与 Floyd 算法一致，路径上的边权之和等于距离
+    for (String file : new String[] {"src/y.txt", "src/z.txt"}) {
+      CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph(file));
+      int n = graph.nodeCount();
+      long[][] dist = new long[n][n];
+      for (int i = 0; i < n; i++) {
+        Arrays.fill(dist[i], Long.MAX_VALUE / 4);
+        dist[i][i] = 0;
+        for (int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++) {
+          dist[i][graph.target(e)] = Math.min(dist[i][graph.target(e)], graph.weight(e));
+        }
+      }
+      for (int k = 0; k < n; k++) {
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j < n; j++) {
+            dist[i][j] = Math.min(dist[i][j], dist[i][k] + dist[k][j]);
+          }
+        }
+      }
+      for (int source = 0; source < n; source++) {
+        ShortestPathTree tree = ShortestPathTree.compute(graph, source);
+        for (int target = 0; target < n; target++) {
+          boolean reachable = dist[source][target] < Long.MAX_VALUE / 4;
+          assertEquals(reachable, tree.isReachable(target));
+          if (!reachable) {
+            assertTrue(tree.path(target).isEmpty());
+            continue;
+          }
+          assertEquals(dist[source][target], tree.distance(target));
+          // 提前结束的搜索对目标的结果相同
+          assertEquals(tree.distance(target),
+                  ShortestPathTree.compute(graph, source, target).distance(target));
+          List<String> path = tree.path(target);
+          assertEquals(graph.word(source), path.get(0));
+          assertEquals(graph.word(target), path.get(path.size() - 1));
+          long length = 0;
+          for (int i = 0; i + 1 < path.size(); i++) {
+            int from = graph.idOf(path.get(i));
+            int to = graph.idOf(path.get(i + 1));
+            assertTrue(graph.hasEdge(from, to));
+            int e = graph.edgeStart(from);
+            while (graph.target(e) != to) {
+              e++;
+            }
+            length += graph.weight(e);
+          }
+          assertEquals(tree.distance(target), length);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIndexedMinHeap() {
+    // 随机插入、降低键值和出队，与逐个扫描的参照实现比较
+    int capacity = 200;
+    IndexedMinHeap heap = new IndexedMinHeap(capacity);
+    int[] keys = new int[capacity];
+    Arrays.fill(keys, -1); // -1 表示不在堆中
+    SplittableRandom random = new SplittableRandom(5);
+    int size = 0;
+    for (int step = 0; step < 20000; step++) {
+      int node = random.nextInt(capacity);
+      int key = random.nextInt(1000);
+      if (random.nextInt(3) > 0) {
+        heap.insertOrDecrease(node, key);
+        if (keys[node] < 0) {
+          keys[node] = key;
+          size++;
+        } else {
+          keys[node] = Math.min(keys[node], key); // 更大的键值被忽略
+        }
+        assertEquals(keys[node], heap.key(node));
+      } else if (size > 0) {
+        int min = Integer.MAX_VALUE;
+        for (int k : keys) {
+          if (k >= 0) {
+            min = Math.min(min, k);
+          }
+        }
+        assertEquals(min, heap.minKey());
+        int polled = heap.poll();
+        assertEquals(min, keys[polled]);
+        assertFalse(heap.contains(polled));
+        keys[polled] = -1;
+        size--;
+      }
+      assertEquals(size, heap.size());
+      assertEquals(keys[node] >= 0, heap.contains(node));
+    }
+
+    // 降低键值后节点上浮到堆顶
+    heap.clear();
+    assertTrue(heap.isEmpty());
+    for (int node = 0; node < 10; node++) {
+      heap.insertOrDecrease(node, 100 + node);
+    }
+    heap.insertOrDecrease(9, 5);
+    heap.insertOrDecrease(3, 200);
+    assertEquals(9, heap.poll());
+    assertEquals(0, heap.poll());
+    assertEquals(103, heap.key(3));
+    heap.clear();
+    assertFalse(heap.contains(3));
+    heap.insertOrDecrease(3, 1);
+    assertEquals(1, heap.size());
+  }
+
+  @Test
+  public void testBridgeWordIndex() {
+    // 预计算索引与逐次扫描的结果应与原有实现一致
+    Map<String, Map<String, Integer>> graph = Main.Graph.buildGraph("src/y.txt");
+    CompactGraph compact = CompactGraph.from(graph);
+    BridgeWords indexed = BridgeWords.indexed(compact);
+    for (String word1 : graph.keySet()) {
+      for (String word2 : graph.keySet()) {
+        String expected = Main.Graph.queryBridgeWords(word1, word2, graph);
+        assertEquals(expected, Main.Graph.queryBridgeWords(word1, word2, compact));
+        assertEquals(expected, Main.Graph.queryBridgeWords(word1, word2, indexed));
+      }
+    }
+    assertEquals("The bridge words from \"a\" to \"case\" are: test.",
+            Main.Graph.queryBridgeWords("a", "case", indexed));
+
+    // 批量查询逐对给出相邻单词的桥接词，未知单词对应空结果
+    String[] words = {"a", "case", "missing", "a", "test", "case"};
+    int[] ids = new int[words.length];
+    for (int i = 0; i < words.length; i++) {
+      ids[i] = compact.idOf(words[i]);
+    }
+    for (BridgeWords bridges : new BridgeWords[] {BridgeWords.direct(compact), indexed}) {
+      int[][] all = bridges.bridgesAll(ids);
+      List<List<String>> lookups = bridges.lookupAll(words);
+      assertEquals(words.length - 1, all.length);
+      assertEquals(words.length - 1, lookups.size());
+      for (int i = 0; i + 1 < words.length; i++) {
+        assertEquals(bridges.lookup(words[i], words[i + 1]), lookups.get(i));
+        assertEquals(lookups.get(i).size(), all[i].length);
+      }
+      assertEquals(List.of("test"), lookups.get(0));
+      assertTrue(lookups.get(1).isEmpty());
+      assertTrue(lookups.get(2).isEmpty());
+      assertEquals(0, bridges.bridgesAll(new int[] {ids[0]}).length);
+    }
+
+    // 只有两跳路径数不超过上限时才建索引
+    long paths = BridgeWords.twoHopPaths(compact);
+    long expectedPaths = 0;
+    for (Map<String, Integer> neighbors : graph.values()) {
+      for (String bridge : neighbors.keySet()) {
+        expectedPaths += graph.get(bridge).size();
+      }
+    }
+    assertEquals(expectedPaths, paths);
+    assertTrue(BridgeWords.forGraph(compact, paths).isIndexed());
+    assertFalse(BridgeWords.forGraph(compact, paths - 1).isIndexed());
+  }
+
+  @Test
+  public void testGraphServer() throws IOException {
+    // 通过本地客户端并发访问服务
+    CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph("src/y.txt"));
+    try (GraphServer server = new GraphServer(BridgeWords.indexed(graph), 0)) {
+      server.start();
+      for (int client = 0; client < 4; client++) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8)) {
+          out.write("BRIDGE a case\nPATH a process\n");
+          out.flush();
+          assertEquals("The bridge words from \"a\" to \"case\" are: test.", in.readLine());
+          assertEquals(".", in.readLine());
+          assertEquals("The shortest path from \"a\" to \"process\" is:", in.readLine());
+          in.readLine();
+          assertEquals("Path length: 9", in.readLine());
+          assertEquals(".", in.readLine());
+        }
+      }
+
+      // KPATHS 的 k 最多为 100，更大的请求被拒绝
+      StringWriter response = new StringWriter();
+      server.handle("KPATHS a process 100", response);
+      assertEquals(Main.Graph.calcKShortestPaths("a", "process", 100, graph) + "\n.\n",
+              response.toString());
+      response = new StringWriter();
+      server.handle("KPATHS a process 101", response);
+      assertEquals("ERROR k must be at most 100\n.\n", response.toString());
+
+      // 命令解析不受默认语言环境影响
+      Locale locale = Locale.getDefault();
+      try {
+        Locale.setDefault(Locale.forLanguageTag("tr"));
+        response = new StringWriter();
+        server.handle("bridge A CASE", response);
+        assertEquals("The bridge words from \"a\" to \"case\" are: test.\n.\n",
+                response.toString());
+      } finally {
+        Locale.setDefault(locale);
+      }
+    }
+  }
+
+  @Test
+  public void testLiveGraphAppend() throws IOException {
+    // 分段追加文本得到的图应与一次性构建的图一致，旧快照不受影响
+    String text = Files.readString(Paths.get("src/y.txt"));
+    int split = text.indexOf("test plan");
+    LiveGraph live = new LiveGraph(new HashMap<>(), null, true);
+    LiveGraph.Snapshot first = live.append(text.substring(0, split));
+    String before = Main.Graph.queryBridgeWords("the", "plan", first.bridgeWords());
+    LiveGraph.Snapshot second = live.append(text.substring(split));
+
+    Map<String, Map<String, Integer>> expected = Main.Graph.buildGraph("src/y.txt");
+    assertEquals(expected, second.graph().toMap());
+    assertEquals(before, Main.Graph.queryBridgeWords("the", "plan", first.bridgeWords()));
+    BridgeWords rebuilt = BridgeWords.indexed(CompactGraph.from(expected));
+    for (String word1 : expected.keySet()) {
+      for (String word2 : expected.keySet()) {
+        assertEquals(new HashSet<>(rebuilt.lookup(word1, word2)),
+                new HashSet<>(second.bridgeWords().lookup(word1, word2)));
+      }
+    }
+  }
+
+  @Test
+  public void testLiveGraphOverlay() throws IOException {
+    // 每次追加后的叠加层与一次性构建的图一致，且不影响旧快照
+    SplittableRandom random = new SplittableRandom(7);
+    StringBuilder text = new StringBuilder("a b c a");
+    LiveGraph live = new LiveGraph(graphOf(text), "a", true);
+    List<LiveGraph.Snapshot> snapshots = new ArrayList<>();
+    List<Map<String, Map<String, Integer>>> expected = new ArrayList<>();
+    for (int append = 0; append < 40; append++) {
+      StringBuilder part = new StringBuilder();
+      for (int i = 0; i < 1 + random.nextInt(20); i++) {
+        part.append(' ').append((char) ('a' + random.nextInt(12)));
+        if (random.nextInt(4) == 0) {
+          part.append(letters(append)); // 新单词
+        }
+      }
+      text.append(part);
+      LiveGraph.Snapshot snapshot = live.append(part.toString());
+      assertNotNull(snapshot.graph().overlay());
+      snapshots.add(snapshot);
+      expected.add(graphOf(text));
+    }
+    for (int i = 0; i < snapshots.size(); i++) {
+      CompactGraph graph = snapshots.get(i).graph();
+      Map<String, Map<String, Integer>> map = expected.get(i);
+      assertEquals(map, graph.toMap());
+      assertEquals(map.values().stream().mapToInt(Map::size).sum(), graph.edgeCount());
+      for (int node = 0; node < graph.nodeCount(); node++) {
+        assertEquals(node, graph.idOf(graph.word(node)));
+        // 反向边按起点排序，权重与正向边一致
+        int previous = -1;
+        for (int r = graph.reverseEdgeStart(node); r < graph.reverseEdgeEnd(node); r++) {
+          int source = graph.reverseSource(r);
+          assertTrue(source > previous);
+          previous = source;
+          assertEquals(map.get(graph.word(source)).get(graph.word(node)),
+                  graph.reverseWeight(r));
+        }
+        String word = graph.word(node);
+        assertEquals(map.values().stream()
+                .filter(neighbors -> neighbors.containsKey(word)).count(),
+                graph.inDegree(node));
+        for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+          assertEquals(node, graph.source(e));
+        }
+      }
+      assertEquals(map, graph.dense().toMap());
+      assertNull(graph.dense().overlay());
+      // 等长路径的选择取决于边的顺序，只比较长度
+      CompactGraph rebuilt = CompactGraph.from(map);
+      for (String word : List.of("a", "c", "f", "k")) {
+        assertEquals(rebuilt.idOf(word) < 0, graph.idOf(word) < 0);
+        if (graph.idOf(word) < 0) {
+          continue;
+        }
+        BidirectionalDijkstra.Path path = BidirectionalDijkstra.find(graph,
+                graph.idOf("b"), graph.idOf(word));
+        BidirectionalDijkstra.Path rebuiltPath = BidirectionalDijkstra.find(rebuilt,
+                rebuilt.idOf("b"), rebuilt.idOf(word));
+        assertEquals(rebuiltPath == null, path == null);
+        if (path != null) {
+          assertEquals(rebuiltPath.length(), path.length());
+        }
+      }
+    }
+
+    // 读取失败时已读的单词在下一次追加时生效
+    Map<String, Map<String, Integer>> before = live.snapshot().graph().toMap();
+    Reader failing = new Reader() {
+      private boolean done;
+
+      @Override
+      public int read(char[] buffer, int offset, int length) throws IOException {
+        if (done) {
+          throw new IOException("disk gone");
+        }
+        done = true;
+        "zz yy ".getChars(0, 6, buffer, offset);
+        return 6;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    assertThrows(IOException.class, () -> live.append(failing));
+    assertEquals(before, live.snapshot().graph().toMap());
+    text.append(" zz yy xx");
+    live.append("xx");
+    assertEquals(graphOf(text),
+            live.snapshot().graph().toMap());
+
+    // 边日志超过基础图后压缩为普通的图，单词 id 不变
+    int id = live.snapshot().graph().idOf("b");
+    StringBuilder many = new StringBuilder();
+    for (int i = 0; i <= GraphOverlay.COMPACTION_MIN_EDGES; i++) {
+      many.append(" w").append(letters(i));
+    }
+    text.append(many);
+    LiveGraph.Snapshot compacted = live.append(many.toString());
+    assertNull(compacted.graph().overlay());
+    assertEquals(id, compacted.graph().idOf("b"));
+    assertEquals(graphOf(text),
+            compacted.graph().toMap());
+    assertEquals(expected.get(0), snapshots.get(0).graph().toMap());
+  }
+
+  @Test
+  public void testGraphFileRoundTrip() throws IOException {
+    // 保存后再加载的图应与 buildGraph 的结果一致
+    Map<String, Map<String, Integer>> expected = Main.Graph.buildGraph("src/y.txt");
+    CompactGraph graph = CompactGraph.from(expected);
+    Path file = Files.createTempFile("graph", GraphFile.EXTENSION);
+    try {
+      GraphFile.save(graph, file);
+      CompactGraph loaded = GraphFile.load(file);
+      assertEquals(expected, loaded.toMap());
+      assertEquals(Main.Graph.generateDotGraph(graph), Main.Graph.generateDotGraph(loaded));
+      assertEquals(Main.Graph.calcShortestPath("a", "process", graph),
+              Main.Graph.calcShortestPath("a", "process", loaded));
+      // 加载的图直接使用文件中的单词哈希表，id 与保存前相同
+      assertTrue(loaded.isOffHeap());
+      for (int id = 0; id < graph.nodeCount(); id++) {
+        assertEquals(id, loaded.idOf(graph.word(id)));
+      }
+      assertEquals(-1, loaded.idOf("missing"));
+
+      CompactGraph accented =
+              CompactGraph.from(graphOf("na\u00efve caf\u00e9 and caf\u00e9 au lait"));
+      GraphFile.save(accented, file);
+      CompactGraph mapped = GraphFile.load(file);
+      assertEquals(accented.toMap(), mapped.toMap());
+      assertEquals(accented.idOf("caf\u00e9"), mapped.idOf("caf\u00e9"));
+      assertEquals(accented.toMap(), GraphFile.load(file, true, true).toMap());
+
+      // 损坏的文件只有在要求校验时才会被校验和检测出来
+      byte[] bytes = Files.readAllBytes(file);
+      bytes[bytes.length - 1] ^= 1;
+      Files.write(file, bytes);
+      assertThrows(IOException.class, () -> GraphFile.load(file, true));
+      assertEquals(accented.nodeCount(), GraphFile.load(file).nodeCount());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testDotWriter() throws Exception {
+    // 完整输出与原有的 generateDotGraph 一致
+    Map<String, Map<String, Integer>> graph = Main.Graph.buildGraph("src/y.txt");
+    CompactGraph compact = CompactGraph.from(graph);
+    StringBuilder baseline = new StringBuilder("digraph G {\n");
+    for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
+      for (Map.Entry<String, Integer> neighbor : entry.getValue().entrySet()) {
+        baseline.append(entry.getKey() + " -> " + neighbor.getKey() + " [label="
+                + neighbor.getValue() + "];\n");
+      }
+    }
+    baseline.append("}");
+    assertEquals(baseline.toString(), Main.Graph.generateDotGraph(graph));
+    assertEquals(baseline.toString(), Main.Graph.generateDotGraph(compact));
+
+    // DOT 关键字（不区分大小写，与语言环境无关）需要加引号
+    Locale locale = Locale.getDefault();
+    try {
+      Locale.setDefault(Locale.forLanguageTag("tr"));
+      assertEquals("digraph G {\n\"DIGRAPH\" -> \"node\" [label=2];\n}",
+              Main.Graph.generateDotGraph(Map.of("DIGRAPH", Map.of("node", 2))));
+    } finally {
+      Locale.setDefault(locale);
+    }
+
+    // 只保留权重最高的 k 条边
+    List<Integer> weights = new ArrayList<>();
+    graph.values().forEach(neighbors -> weights.addAll(neighbors.values()));
+    weights.sort(null);
+    for (int k : new int[] {0, 1, 5, 20}) {
+      StringWriter out = new StringWriter();
+      DotWriter.write(compact, DotWriter.Options.all().topEdges(k), out);
+      List<Integer> written = new ArrayList<>();
+      for (String line : out.toString().split("\n")) {
+        if (line.contains(" -> ")) {
+          written.add(Integer.parseInt(line.replaceAll(".*label=(\\d+).*", "$1")));
+        }
+      }
+      written.sort(null);
+      assertEquals(weights.subList(weights.size() - k, weights.size()), written);
+    }
+
+    // 高亮路径的边为红色；邻域只含距路径至多 hops 步的单词，不分方向
+    List<String> path = List.of("a", "detailed", "procedure");
+    for (int hops = 0; hops <= 2; hops++) {
+      Set<String> reached = new HashSet<>(path);
+      for (int hop = 0; hop < hops; hop++) {
+        Set<String> next = new HashSet<>(reached);
+        for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
+          for (String neighbor : entry.getValue().keySet()) {
+            if (reached.contains(entry.getKey()) || reached.contains(neighbor)) {
+              next.add(entry.getKey());
+              next.add(neighbor);
+            }
+          }
+        }
+        reached = next;
+      }
+      Set<String> expected = new HashSet<>();
+      for (Map.Entry<String, Map<String, Integer>> entry : graph.entrySet()) {
+        for (Map.Entry<String, Integer> neighbor : entry.getValue().entrySet()) {
+          if (reached.contains(entry.getKey()) && reached.contains(neighbor.getKey())) {
+            boolean onPath = path.indexOf(neighbor.getKey()) == path.indexOf(entry.getKey()) + 1
+                    && path.contains(entry.getKey());
+            expected.add(entry.getKey() + " -> " + neighbor.getKey() + " [label="
+                    + neighbor.getValue() + (onPath ? ", color=red, penwidth=2.0" : "") + "];");
+          }
+        }
+      }
+      StringWriter out = new StringWriter();
+      DotWriter.write(compact, DotWriter.Options.all().highlight(path).neighborhood(hops), out);
+      Set<String> lines = new HashSet<>(Arrays.asList(out.toString().split("\n")));
+      lines.remove("digraph G {");
+      lines.remove("}");
+      assertEquals(expected, lines);
+    }
+    assertTrue(Main.Graph.generateDotGraphWithHighlight(compact, path)
+            .contains("a -> detailed [label=1, color=red, penwidth=2.0];"));
+
+    // 渲染失败（dot 不存在或无法读取输入）时 future 异常完成
+    Path missing = Files.createTempDirectory("dot").resolve("missing.dot");
+    CompletableFuture<Path> image = DotWriter.renderAsync(missing,
+            missing.resolveSibling("missing.png"));
+    assertThrows(ExecutionException.class, () -> image.get(30, TimeUnit.SECONDS));
+    Files.delete(missing.getParent());
+  }
+
+  @Test
+  public void testQueryCache() {
+    // 缓存的结果应与直接计算一致，图更新后缓存应失效
+    LiveGraph live = new LiveGraph(Main.Graph.buildGraph("src/y.txt"), "process", true);
+    QueryCache cache = new QueryCache(live.snapshot().bridgeWords(), 10, 1000);
+    live.addListener(cache);
+    CompactGraph graph = live.snapshot().graph();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Main.Graph.calcShortestPath("a", "process", graph),
+              cache.calcShortestPath("a", "process"));
+      assertEquals(Main.Graph.queryBridgeWords("a", "case", graph),
+              cache.queryBridgeWords("a", "case"));
+    }
+    assertEquals(2, cache.pathStats().hits.sum());
+    assertEquals(1, cache.pathStats().misses.sum());
+    assertEquals(2, cache.bridgeStats().hits.sum());
+
+    live.append("a process");
+    assertEquals("The shortest path from \"a\" to \"process\" is:\na -> process\nPath length: 1",
+            cache.calcShortestPath("a", "process"));
+
+    // 只增加权重的追加保留桥接词结果，最短路径仍与重新计算一致
+    assertEquals(Main.Graph.queryBridgeWords("a", "case", live.snapshot().graph()),
+            cache.queryBridgeWords("a", "case"));
+    long hits = cache.bridgeStats().hits.sum();
+    long misses = cache.bridgeStats().misses.sum();
+    live.append("a process");
+    assertEquals(Main.Graph.queryBridgeWords("a", "case", live.snapshot().graph()),
+            cache.queryBridgeWords("a", "case"));
+    assertEquals(hits + 1, cache.bridgeStats().hits.sum());
+    assertEquals(misses, cache.bridgeStats().misses.sum());
+    assertEquals(Main.Graph.calcShortestPath("a", "process", live.snapshot().graph()),
+            cache.calcShortestPath("a", "process"));
+
+    // 新边只使受影响的单词对失效
+    assertEquals(Main.Graph.queryBridgeWords("test", "a", live.snapshot().graph()),
+            cache.queryBridgeWords("test", "a"));
+    live.append("a process case");
+    misses = cache.bridgeStats().misses.sum();
+    assertEquals(Main.Graph.queryBridgeWords("a", "case", live.snapshot().graph()),
+            cache.queryBridgeWords("a", "case"));
+    assertTrue(cache.queryBridgeWords("a", "case").contains("process"));
+    assertEquals(misses + 1, cache.bridgeStats().misses.sum());
+    assertEquals(Main.Graph.queryBridgeWords("test", "a", live.snapshot().graph()),
+            cache.queryBridgeWords("test", "a"));
+    assertEquals(misses + 1, cache.bridgeStats().misses.sum());
+    assertEquals(Main.Graph.calcShortestPath("a", "case", live.snapshot().graph()),
+            cache.calcShortestPath("a", "case"));
+  }
+
+  @Test
+  public void testMetricsHistogram() {
+    // 百分位数的相对误差应在桶宽范围内
+    Metrics.Histogram histogram = new Metrics.Histogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertEquals(100_000, histogram.count());
+    assertEquals(100_000_000, histogram.max());
+    for (double percentile : new double[] {1, 50, 90, 99, 99.9}) {
+      double expected = percentile * 1_000_000;
+      double actual = histogram.valueAtPercentile(percentile);
+      assertTrue(Math.abs(actual - expected) / expected < 0.02, percentile + ": " + actual);
+    }
+    for (long value = 0; value < 1_000_000; value += 997) {
+      int index = Metrics.Histogram.index(value);
+      assertTrue(Metrics.Histogram.highestValue(index) >= value);
+      assertTrue(index == 0 || Metrics.Histogram.highestValue(index - 1) < value);
+    }
+  }
+
+  @Test
+  public void testBidirectionalDijkstra() {
+    // 双向搜索的路径长度应与单向 Dijkstra 一致，且路径上的边都存在
+    for (String file : new String[] {"src/y.txt", "src/z.txt"}) {
+      CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph(file));
+      for (int source = 0; source < graph.nodeCount(); source++) {
+        ShortestPathTree tree = ShortestPathTree.compute(graph, source);
+        for (int target = 0; target < graph.nodeCount(); target++) {
+          BidirectionalDijkstra.Path path = BidirectionalDijkstra.find(graph, source, target);
+          if (!tree.isReachable(target)) {
+            assertNull(path);
+            continue;
+          }
+          assertEquals(tree.distance(target), path.length());
+          int[] nodes = path.nodes();
+          assertEquals(source, nodes[0]);
+          assertEquals(target, nodes[nodes.length - 1]);
+          int length = 0;
+          for (int i = 0; i + 1 < nodes.length; i++) {
+            int e = graph.edgeStart(nodes[i]);
+            while (e < graph.edgeEnd(nodes[i]) && graph.target(e) != nodes[i + 1]) {
+              e++;
+            }
+            assertTrue(e < graph.edgeEnd(nodes[i]));
+            length += graph.weight(e);
+          }
+          assertEquals(path.length(), length);
+        }
+      }
+
+      // 并发查询共用有界的工作区池，结果应与顺序查询相同
+      int n = graph.nodeCount();
+      long[] parallel = IntStream.range(0, n * n).parallel().mapToLong(i -> {
+        BidirectionalDijkstra.Path path = BidirectionalDijkstra.find(graph, i / n, i % n);
+        return path == null ? -1 : path.length();
+      }).toArray();
+      for (int source = 0; source < n; source++) {
+        ShortestPathTree tree = ShortestPathTree.compute(graph, source);
+        for (int target = 0; target < n; target++) {
+          assertEquals(tree.isReachable(target) ? tree.distance(target) : -1,
+                  parallel[source * n + target]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDistanceMatrixAndKShortestPaths() throws IOException {
+    // 距离矩阵的每一行应与单源 Dijkstra 一致
+    CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph("src/z.txt"));
+    Path file = Files.createTempFile("graph", ".dist");
+    try {
+      DistanceMatrix.write(graph, file);
+      try (DistanceMatrix matrix = DistanceMatrix.open(file)) {
+        assertEquals(graph.nodeCount(), matrix.rowCount());
+        for (int row = 0; row < matrix.rowCount(); row++) {
+          ShortestPathTree tree = ShortestPathTree.compute(graph, matrix.source(row));
+          int[] distances = matrix.row(row);
+          for (int target = 0; target < graph.nodeCount(); target++) {
+            assertEquals(tree.isReachable(target) ? tree.distance(target) : -1,
+                    distances[target]);
+          }
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    // a -> b -> d 与 a -> c -> d 等长，a -> d 较长
+    Map<String, Map<String, Integer>> map = new HashMap<>();
+    map.put("a", new HashMap<>(Map.of("b", 1, "c", 1, "d", 3)));
+    map.put("b", new HashMap<>(Map.of("d", 1)));
+    map.put("c", new HashMap<>(Map.of("d", 1)));
+    map.put("d", new HashMap<>());
+    CompactGraph small = CompactGraph.from(map);
+    int a = small.idOf("a");
+    int d = small.idOf("d");
+    assertEquals(2, KShortestPaths.allShortest(small, a, d, 10).size());
+    List<BidirectionalDijkstra.Path> paths = KShortestPaths.find(small, a, d, 5);
+    assertEquals(3, paths.size());
+    assertEquals(2, paths.get(0).length());
+    assertEquals(2, paths.get(1).length());
+    assertEquals(List.of("a", "d"), paths.get(2).words());
+    assertTrue(Main.Graph.calcKShortestPaths("a", "d", 2, small).startsWith(
+            "The 2 shortest paths from \"a\" to \"d\" are:\n1. a -> "));
+  }
+
+  @Test
+  public void testOffHeapGraph() throws IOException {
+    // 堆外图与堆内图的单词、边和权重一致，查询结果相同
+    for (String file : new String[] {"src/y.txt", "src/z.txt"}) {
+      CompactGraph heap = CompactGraph.from(Main.Graph.buildGraph(file));
+      CompactGraph offHeap = Main.Graph.buildGraphOffHeap(file);
+      assertTrue(offHeap.isOffHeap());
+      assertEquals(heap.toMap(), offHeap.toMap());
+      assertEquals(-1, offHeap.idOf("nosuchword"));
+      for (int id = 0; id < offHeap.nodeCount(); id++) {
+        assertEquals(id, offHeap.idOf(offHeap.word(id)));
+        ShortestPathTree tree = ShortestPathTree.compute(heap, heap.idOf(offHeap.word(id)));
+        BidirectionalDijkstra.Path path = BidirectionalDijkstra.find(offHeap, id, 0);
+        int target = heap.idOf(offHeap.word(0));
+        assertEquals(tree.isReachable(target), path != null);
+        if (path != null) {
+          assertEquals(tree.distance(target), path.length());
+        }
+      }
+
+      Path snapshot = Files.createTempFile("graph", GraphFile.EXTENSION);
+      try {
+        GraphFile.save(offHeap, snapshot);
+        CompactGraph loaded = GraphFile.load(snapshot, true, true);
+        assertTrue(loaded.isOffHeap());
+        assertEquals(heap.toMap(), loaded.toMap());
+      } finally {
+        Files.deleteIfExists(snapshot);
+      }
+    }
+
+    OffHeapWords words = new OffHeapWords(1);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, words.add("w" + i));
+    }
+    assertEquals(1000, words.add("caf\u00e9"));
+    assertEquals(1000, words.idOf("caf\u00e9"));
+    assertEquals(-1, words.idOf("cafe"));
+    assertEquals("w999", words.word(999));
+  }
+
+  @Test
+  public void testGenerateNewText() {
+    // 文本 "a b c x d c y d" 中 (a, c) 有唯一桥接词 b，(c, d) 有 x 和 y 两个
+    OffHeapGraphBuilder builder = new OffHeapGraphBuilder();
+    Map<String, Map<String, Integer>> map = new HashMap<>();
+    GraphBuilder heapBuilder = new GraphBuilder(map);
+    for (String word : "a b c x d c y d".split(" ")) {
+      builder.accept(word);
+      heapBuilder.accept(word);
+    }
+    CompactGraph heap = CompactGraph.from(map);
+    for (BridgeWords bridges : new BridgeWords[] {BridgeWords.direct(heap),
+        BridgeWords.indexed(heap), BridgeWords.direct(builder.build())}) {
+      assertEquals("a b c", Main.Graph.generateNewText("a c", bridges));
+      assertEquals("A C", Main.Graph.generateNewText("A C", bridges));
+      assertEquals(" a b c q", Main.Graph.generateNewText("!a,  c.\tq", bridges));
+      assertEquals("a!", Main.Graph.generateNewText("a!", bridges));
+      assertEquals("!!!", Main.Graph.generateNewText("!!!", bridges));
+      assertEquals("", Main.Graph.generateNewText("", bridges));
+      assertNull(Main.Graph.generateNewText(null, bridges));
+      Set<String> seen = new HashSet<>();
+      for (int i = 0; i < 200; i++) {
+        seen.add(Main.Graph.generateNewText("a c d", bridges));
+      }
+      assertEquals(Set.of("a b c x d", "a b c y d"), seen);
+    }
+
+    // 非 ASCII 桥接词从堆外字典解码
+    OffHeapGraphBuilder accented = new OffHeapGraphBuilder();
+    for (String word : "a café c".split(" ")) {
+      accented.accept(word);
+    }
+    assertEquals("a café c",
+            Main.Graph.generateNewText("a c", BridgeWords.direct(accented.build())));
+  }
+
+  @Test
+  public void testCorpusBuilder() throws IOException {
+    // 单个文件的结果与流式构建一致
+    Path single = Paths.get("src/y.txt");
+    assertEquals(Main.Graph.buildGraphStreaming("src/y.txt"),
+            CorpusBuilder.build(List.of(single), 2, false, null).graph().toMap());
+
+    Path dir = Files.createTempDirectory("corpus");
+    Path sub = Files.createDirectory(dir.resolve("sub"));
+    Path first = Files.writeString(dir.resolve("first.txt"), "A b, c");
+    Path second = Files.writeString(dir.resolve("second.txt"), "c d a");
+    Path third = Files.writeString(sub.resolve("third.txt"), "b c");
+    Path list = Files.writeString(dir.resolve("files.lst"),
+            "# corpus\n" + third + "\n\n" + first + "\n");
+    try {
+      assertEquals(List.of(first, second), CorpusBuilder.resolve(dir + "/*.txt"));
+      assertEquals(List.of(third, first), CorpusBuilder.resolve("@" + list));
+      assertTrue(CorpusBuilder.isCorpus(dir.toString()));
+      assertEquals(List.of(Paths.get("src/y.txt"), Paths.get("src/z.txt")),
+              CorpusBuilder.resolve("src/?.txt"));
+      assertTrue(CorpusBuilder.resolve("*.md").contains(Paths.get("README.md")));
+
+      List<Path> files = List.of(first, second, third);
+      AtomicInteger reports = new AtomicInteger();
+      CorpusBuilder.Result result = CorpusBuilder.build(files, 3, true,
+              (done, count, bytes, total, nanos) -> reports.incrementAndGet());
+      assertEquals(3, reports.get());
+      CompactGraph graph = result.graph();
+      // 文件之间没有边：first 以 c 结尾、second 以 c 开头，但不存在 c -> c
+      assertEquals(Map.of("a", Map.of("b", 1), "b", Map.of("c", 2), "c", Map.of("d", 1),
+              "d", Map.of("a", 1)), graph.toMap());
+      assertEquals(List.of("a", "b", "c", "d"), List.of(graph.word(0), graph.word(1),
+              graph.word(2), graph.word(3)));
+
+      CorpusBuilder.Provenance provenance = result.provenance();
+      int b = graph.idOf("b");
+      int edge = graph.edgeStart(b);
+      assertEquals(2, provenance.end(edge) - provenance.start(edge));
+      assertEquals(first, result.sources().get(provenance.source(provenance.start(edge))));
+      assertEquals(third, result.sources().get(provenance.source(provenance.start(edge) + 1)));
+      assertEquals(1, provenance.count(provenance.start(edge)));
+    } finally {
+      for (Path file : new Path[] {first, second, third, list, sub, dir}) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @Test
+  public void testGraphAnalytics() throws IOException {
+    // 权重相同的环上每个单词的排名都相同
+    CompactGraph cycle = CompactGraph.from(Map.of("a", Map.of("b", 2), "b", Map.of("c", 2),
+            "c", Map.of("a", 2)));
+    GraphAnalytics analytics = cycle.analytics();
+    assertSame(analytics, cycle.analytics());
+    assertTrue(analytics.converged());
+    for (int node = 0; node < cycle.nodeCount(); node++) {
+      assertEquals(1.0 / 3, analytics.pageRank(node), 1e-9);
+      assertEquals(2, analytics.frequency(node));
+    }
+
+    CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph("src/y.txt"));
+    ForkJoinPool pool = new ForkJoinPool(4);
+    GraphAnalytics parallel = GraphAnalytics.compute(graph, pool);
+    pool.shutdown();
+    analytics = graph.analytics();
+    double sum = 0;
+    for (int node = 0; node < graph.nodeCount(); node++) {
+      assertEquals(analytics.pageRank(node), parallel.pageRank(node));
+      sum += analytics.pageRank(node);
+    }
+    assertEquals(1.0, sum, 1e-6);
+    int[] top = analytics.topByPageRank(5);
+    assertEquals(5, top.length);
+    for (int i = 1; i < top.length; i++) {
+      assertTrue(analytics.pageRank(top[i - 1]) >= analytics.pageRank(top[i]));
+    }
+
+    String text = Files.readString(Paths.get("src/y.txt")).replaceAll("[^a-zA-Z\\s]", " ")
+            .toLowerCase().trim();
+    Map<String, Integer> counts = new HashMap<>();
+    for (String word : text.split("\\s+")) {
+      counts.merge(word, 1, Integer::sum);
+    }
+    int maxWeight = 0;
+    for (int node = 0; node < graph.nodeCount(); node++) {
+      for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+        assertEquals(node, graph.source(e));
+        maxWeight = Math.max(maxWeight, graph.weight(e));
+      }
+    }
+    int[] words = analytics.topByFrequency(3);
+    assertEquals(3, words.length);
+    assertEquals(counts.values().stream().mapToInt(Integer::intValue).max().getAsInt(),
+            analytics.frequency(words[0]));
+    assertEquals((long) counts.get(graph.word(words[1])), analytics.frequency(words[1]));
+    assertArrayEquals(new int[] {words[0], words[1]}, analytics.topByFrequency(2));
+    assertEquals(maxWeight, graph.weight(analytics.topEdges(1)[0]));
+    assertTrue(Main.Graph.rankWords(5, graph).startsWith("Top 5 words by PageRank:\n1. "
+            + graph.word(top[0]) + " ("));
+    assertEquals(graph.nodeCount(), analytics.topByFrequency(Integer.MAX_VALUE).length);
+  }
+
+  @Test
+  public void testSketchGraphBuilder() {
+    Map<String, Map<String, Integer>> exact = Main.Graph.buildGraph("src/y.txt");
+    Map<String, Map<String, Integer>> frequent = new HashMap<>();
+    exact.forEach((from, neighbors) -> neighbors.forEach((to, weight) -> {
+      if (weight >= 2) {
+        frequent.computeIfAbsent(from, k -> new HashMap<>()).put(to, weight);
+        frequent.computeIfAbsent(to, k -> new HashMap<>());
+      }
+    }));
+    // 草图足够宽时估计值等于精确计数，且边上的每个单词都是键
+    Map<String, Map<String, Integer>> approximate = Main.Graph.buildGraphApproximate("src/y.txt",
+            SketchGraphBuilder.Options.minCount(2));
+    assertEquals(frequent, approximate);
+    assertTrue(exact.keySet().containsAll(approximate.keySet()));
+    approximate.forEach((from, neighbors) ->
+            assertTrue(approximate.keySet().containsAll(neighbors.keySet())));
+
+    // 候选表满时只保留估计值最高的边
+    SketchGraphBuilder builder = new SketchGraphBuilder(
+            SketchGraphBuilder.Options.minCount(3).maxEdges(2));
+    for (int i = 0; i < 50; i++) {
+      builder.accept("a");
+      builder.accept("b");
+    }
+    for (int i = 0; i < 30; i++) {
+      builder.accept("w" + (char) ('a' + i % 10));
+    }
+    assertEquals(129, builder.bigrams());
+    Map<String, Map<String, Integer>> graph = builder.graph();
+    assertEquals(50, graph.get("a").get("b"));
+    assertEquals(49, graph.get("b").get("a"));
+    assertTrue(graph.values().stream().mapToInt(Map::size).sum() < 4);
+
+    // 只作为终点出现的单词也是键
+    SketchGraphBuilder pair = new SketchGraphBuilder(SketchGraphBuilder.Options.minCount(1));
+    pair.accept("a");
+    pair.accept("b");
+    assertEquals(Map.of("a", Map.of("b", 1), "b", Map.of()), pair.graph());
+    assertEquals("No bridge words from \"a\" to \"b\"!",
+            Main.Graph.queryBridgeWords("a", "b", pair.graph()));
+
+    // 极窄的草图只会高估
+    builder = new SketchGraphBuilder(
+            SketchGraphBuilder.Options.minCount(1).epsilon(0.5).delta(0.5));
+    for (int i = 0; i < 30; i++) {
+      builder.accept("w" + (char) ('a' + i % 10));
+    }
+    builder.graph().forEach((from, neighbors) -> neighbors.values()
+            .forEach(weight -> assertTrue(weight >= 2)));
+    CompactGraph compact = CompactGraph.from(graph);
+    assertTrue(Main.Graph.queryBridgeWords("a", "a", compact).contains("b"));
+  }
+
+  @Test
+  public void testAsyncGraph() throws Exception {
+    CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph("src/y.txt"));
+    BridgeWords bridgeWords = BridgeWords.indexed(graph);
+    AsyncGraph async = new AsyncGraph(bridgeWords);
+    assertEquals(bridgeWords.lookup("the", "lab"), async.bridgeWords("the", "lab").get());
+    BidirectionalDijkstra.Path path = async.shortestPath("a", "process").get().orElseThrow();
+    assertEquals(9, path.length());
+    ShortestPathTree tree = async.shortestPathsFrom("a").get();
+    assertEquals(9, tree.distance(graph.idOf("process")));
+    ExecutionException missing = assertThrows(ExecutionException.class,
+            () -> async.shortestPathsFrom("nosuchword").get());
+    assertTrue(missing.getCause() instanceof IllegalArgumentException);
+    RandomWalker walker = new RandomWalker(graph, true);
+    List<String> expected = walker.walks(7, 20, 50, RandomWalker.Termination.REPEATED_EDGE)
+            .collect(Collectors.toList());
+    List<List<String>> walks = async.randomWalks(7, 20, 50,
+            RandomWalker.Termination.REPEATED_EDGE, true).get();
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i), String.join(" ", walks.get(i)));
+    }
+
+    // 排队中的任务超时后不再执行
+    List<Runnable> queued = new ArrayList<>();
+    CompletableFuture<ShortestPathTree> late = new AsyncGraph(bridgeWords, queued::add)
+            .withTimeout(Duration.ofMillis(20)).shortestPathsFrom("a");
+    ExecutionException timedOut = assertThrows(ExecutionException.class,
+            () -> late.get(10, TimeUnit.SECONDS));
+    assertTrue(timedOut.getCause() instanceof TimeoutException);
+    queued.get(0).run();
+    assertTrue(late.isCompletedExceptionally());
+
+    CompletableFuture<List<String>> rejected = new AsyncGraph(bridgeWords, task -> {
+      throw new RejectedExecutionException();
+    }).bridgeWords("the", "lab");
+    assertThrows(ExecutionException.class, rejected::get);
+
+    // 已取消的计算在下一次检查时停止
+    int n = 5000;
+    int[] offsets = new int[n + 1];
+    int[] targets = new int[n - 1];
+    String[] words = new String[n];
+    for (int i = 0; i < n; i++) {
+      words[i] = "w" + i;
+      offsets[i + 1] = Math.min(i + 1, n - 1);
+      if (i < n - 1) {
+        targets[i] = i + 1;
+      }
+    }
+    int[] weights = new int[n - 1];
+    Arrays.fill(weights, 1);
+    CompactGraph chain = CompactGraph.of(words, offsets, targets, weights);
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    cancelled.cancel(false);
+    assertThrows(CancellationException.class,
+            () -> ShortestPathTree.compute(chain, 0, -1, Cancellation.of(cancelled)));
+    assertEquals(n - 1, ShortestPathTree.compute(chain, 0, -1, Cancellation.NONE)
+            .distance(n - 1));
+  }
+
+  @Test
+  public void testRandomWalker() throws IOException {
+    // 同一种子的游走可复现，与线程数和输出方式无关
+    CompactGraph graph = CompactGraph.from(Main.Graph.buildGraph("src/y.txt"));
+    for (boolean weighted : new boolean[] {false, true}) {
+      RandomWalker walker = new RandomWalker(graph, weighted);
+      List<String> walks = walker.walks(7, 200, 30, RandomWalker.Termination.MAX_LENGTH)
+              .collect(Collectors.toList());
+      assertEquals(walks, walker.walks(7, 200, 30, RandomWalker.Termination.MAX_LENGTH)
+              .collect(Collectors.toList()));
+      for (int i = 0; i < walks.size(); i += 37) {
+        StringBuilder words = new StringBuilder();
+        for (int id : walker.walk(7, i, 30, RandomWalker.Termination.MAX_LENGTH)) {
+          words.append(words.length() == 0 ? "" : " ").append(graph.word(id));
+        }
+        assertEquals(walks.get(i), words.toString());
+      }
+      Path file = Files.createTempFile("walks", ".txt");
+      try {
+        walker.writeWalks(file, 7, 200, 30, RandomWalker.Termination.MAX_LENGTH);
+        assertEquals(walks, Files.readAllLines(file, StandardCharsets.UTF_8));
+      } finally {
+        Files.delete(file);
+      }
+
+      // 不同种子的游走不同，相邻种子也不是彼此错位的副本
+      List<String> next = walker.walks(8, 200, 30, RandomWalker.Termination.MAX_LENGTH)
+              .collect(Collectors.toList());
+      assertNotEquals(walks, next);
+      assertNotEquals(walks.subList(1, 200), next.subList(0, 199));
+    }
+  }
+
+  @Test
+  public void testUnicodeTokenizer() throws IOException {
+    String text = "Caf\u00e9 l\u2019homme \u4e2d\u6587\ud840\udc00 don't 'quoted' "
+            + "e\u0301t\u00e9 x''y";
+    List<String> unicode = List.of("caf\u00e9", "l'homme", "\u4e2d", "\u6587",
+            "\ud840\udc00", "don't", "quoted", "e\u0301t\u00e9", "x", "y");
+    List<String> ascii = List.of("caf", "l", "homme", "don", "t", "quoted", "e", "t", "x", "y");
+    char[] chars = text.toCharArray();
+    for (WordTokenizer.Mode mode : WordTokenizer.Mode.values()) {
+      List<String> expected = mode == WordTokenizer.Mode.ASCII ? ascii : unicode;
+      // 任意分块方式都应得到相同的单词，包括切断代理项对
+      for (int chunk = 1; chunk <= chars.length; chunk++) {
+        List<String> words = new ArrayList<>();
+        WordTokenizer tokenizer = new WordTokenizer(mode);
+        for (int off = 0; off < chars.length; off += chunk) {
+          tokenizer.feed(chars, off, Math.min(chunk, chars.length - off), words::add);
+        }
+        tokenizer.finish(words::add);
+        assertEquals(expected, words);
+      }
+      // 查询时的扫描方法与分词器一致
+      List<String> scanned = new ArrayList<>();
+      for (int i = 0; (i = mode.wordStart(text, i)) < text.length(); ) {
+        int end = mode.wordEnd(text, i);
+        StringBuilder word = new StringBuilder();
+        mode.appendWord(text, i, end, word);
+        scanned.add(word.toString());
+        i = end;
+      }
+      assertEquals(expected, scanned);
+    }
+
+    // 模式名不区分大小写，未知名称回退到 ASCII 而不是让类初始化失败
+    assertEquals(WordTokenizer.Mode.UNICODE, WordTokenizer.Mode.parse(" Unicode"));
+    assertEquals(WordTokenizer.Mode.ASCII, WordTokenizer.Mode.parse("ASCII"));
+    assertEquals(WordTokenizer.Mode.ASCII, WordTokenizer.Mode.parse("utf8"));
+    assertEquals(WordTokenizer.Mode.ASCII, WordTokenizer.Mode.parse(null));
+
+    // 按规范化后的单词查找桥接词，输出保留原文
+    GraphBuilder builder = new GraphBuilder();
+    WordTokenizer.tokenize(new StringReader("l'homme est caf\u00e9"),
+            WordTokenizer.Mode.UNICODE, builder);
+    BridgeWords bridges = BridgeWords.indexed(CompactGraph.from(builder.graph()));
+    StringBuilder out = new StringBuilder();
+    assertTrue(TextRewriter.rewrite("L\u2019homme CAF\u00c9!", bridges, new SplittableRandom(1),
+            WordTokenizer.Mode.UNICODE, out));
+    assertEquals("L\u2019homme est CAF\u00c9", out.toString());
+
+    // 并行构建在多字节字符和撇号附近切分时仍与流式构建一致
+    Path file = Files.createTempFile("unicode", ".txt");
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Files.writeString(file, (text + "\n").repeat(20), StandardCharsets.UTF_8);
+      GraphBuilder streaming = new GraphBuilder();
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        WordTokenizer.tokenize(reader, WordTokenizer.Mode.UNICODE, streaming);
+      }
+      for (long chunkSize = 1; chunkSize <= 64; chunkSize *= 2) {
+        assertEquals(streaming.graph(), ParallelGraphBuilder.build(file, pool, chunkSize,
+                WordTokenizer.Mode.UNICODE));
+        assertEquals(Main.Graph.buildGraph(file.toString()),
+                ParallelGraphBuilder.build(file, pool, chunkSize, WordTokenizer.Mode.ASCII));
+      }
+    } finally {
+      pool.shutdown();
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Spells {@code n} in base 26 with the letters a to z, so that it is a single word.
+   */
+  private static String letters(int n) {
+    StringBuilder word = new StringBuilder();
+    do {
+      word.append((char) ('a' + n % 26));
+      n /= 26;
+    } while (n > 0);
+    return word.toString();
+  }
+
+  private static Map<String, Map<String, Integer>> graphOf(CharSequence text) throws IOException {
+    GraphBuilder builder = new GraphBuilder();
+    WordTokenizer.tokenize(new StringReader(text.toString()), builder);
+    return builder.graph();
+  }
 }